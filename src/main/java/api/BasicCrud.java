@@ -21,6 +21,20 @@ public interface BasicCrud {
      */
     List<Sample> listSamples();
 
+    /**
+     * Lists one page of samples that match the given resultType. Pages are positioned by key
+     * (not by offset), so fetching a page costs about the same no matter how deep into the listing it is.
+     * Samples written between two pages may or may not show up in the following pages.
+     *
+     * @param resultType acts as a filter criteria, {@link SampleResult#ALL} lists all samples
+     * @param pageSize the maximum number of samples in the page
+     * @param continuationToken {@code null} for the first page, otherwise the token of the previous page
+     * @return the page and the token for the next page
+     * @throws IllegalArgumentException if the resultType is {@code null}, the pageSize is not positive or the
+     * continuation token is malformed or no longer valid
+     */
+    SamplePage listSamples(SampleResult resultType, int pageSize, String continuationToken);
+
     /**
      * Inserts a {@link Sample} object into the repository
      * @param sample The Sample you wish to add
@@ -59,6 +73,44 @@ public interface BasicCrud {
      */
     boolean deleteSample(Sample sample);
 
+    /**
+     * Updates every Sample of the list whose UID already exists in the repository.
+     * The whole batch is applied in one write operation of the underlying storage.
+     *
+     * @param updatedSamples The new copies you wish to replace the originals with
+     * @return one {@link BatchOutcome} per given Sample, in the same order:
+     * {@code UPDATED}, {@code NOT_FOUND} or {@code REJECTED}
+     */
+    List<BatchOutcome> updateSamples(List<Sample> updatedSamples);
+
+    /**
+     * Updates every existing Sample of the list and inserts all others.
+     * The whole batch is applied in one write operation of the underlying storage.
+     *
+     * @param samples The Samples you wish to update/insert
+     * @return one {@link BatchOutcome} per given Sample, in the same order:
+     * {@code UPDATED}, {@code INSERTED} or {@code REJECTED}
+     */
+    List<BatchOutcome> upsertSamples(List<Sample> samples);
+
+    /**
+     * Deletes all given Samples, matched by their UID.
+     *
+     * @param samples The Samples you wish to delete
+     * @return one {@link BatchOutcome} per given Sample, in the same order:
+     * {@code DELETED}, {@code NOT_FOUND} or {@code REJECTED}
+     */
+    List<BatchOutcome> deleteSamples(List<Sample> samples);
+
+    /**
+     * Deletes the Samples with the given UIDs.
+     *
+     * @param uids The UIDs of the Samples you wish to delete
+     * @return one {@link BatchOutcome} per given UID, in the same order:
+     * {@code DELETED}, {@code NOT_FOUND} or {@code REJECTED}
+     */
+    List<BatchOutcome> deleteSamplesByUid(List<String> uids);
+
     /**
      * Retrieves a Sample by its UUID.
      *
@@ -0,0 +1,24 @@
+package api;
+
+/**
+ * The outcome of a single item of a batch operation of {@link BasicCrud}. Batch operations return one
+ * outcome per given item, in the order the items were given.
+ */
+public enum BatchOutcome {
+
+    /** The Sample did not exist and was inserted. */
+    INSERTED,
+
+    /** An existing Sample with the same UID was replaced. */
+    UPDATED,
+
+    /** The Sample existed and was deleted. */
+    DELETED,
+
+    /** No Sample with the given UID exists, nothing was written. */
+    NOT_FOUND,
+
+    /** The item was {@code null}, had no UID or carried {@link model.SampleResult#ALL}. */
+    REJECTED
+
+}
@@ -0,0 +1,139 @@
+package api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counting Bloom filter over Sample UIDs, used by repositories to answer "does this UID exist?" without
+ * touching their storage. {@link #mightContain(String)} never returns false for a UID that was added and
+ * not removed since; it returns true for an absent UID with roughly the configured false positive rate.
+ *
+ * Every position holds a 4 bit counter instead of a single bit, which is what makes {@link #remove(String)}
+ * possible. A counter that reaches 15 sticks there, so overflowing never causes false negatives. Only remove
+ * UIDs that are known to have been added, otherwise other UIDs may be reported as absent.
+ *
+ * All methods are thread-safe and lock-free.
+ */
+public final class CountingBloomFilter {
+
+    private static final int COUNTERS_PER_WORD = 16;
+    private static final long COUNTER_MASK = 0xFL;
+
+    private final AtomicLongArray words;
+    private final long counterCount;
+    private final int hashCount;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final AtomicLong size = new AtomicLong();
+
+    /**
+     * @param expectedInsertions the number of UIDs the filter is sized for
+     * @param falsePositiveRate the desired false positive rate at that size, e.g. 0.01
+     */
+    public CountingBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 1) throw new IllegalArgumentException("expectedInsertions must be positive.");
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1.");
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+
+        long counters = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.counterCount = Math.max(COUNTERS_PER_WORD, counters);
+        this.hashCount = Math.max(1, (int) Math.round((double) this.counterCount / expectedInsertions * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact((this.counterCount + COUNTERS_PER_WORD - 1) / COUNTERS_PER_WORD));
+    }
+
+    public void add(String uid) {
+        long hash = hash64(uid);
+        long step = mix64(hash) | 1;
+        for (int i = 0; i < this.hashCount; i++) {
+            this.increment(Math.floorMod(hash + i * step, this.counterCount));
+        }
+        this.size.incrementAndGet();
+    }
+
+    public void remove(String uid) {
+        long hash = hash64(uid);
+        long step = mix64(hash) | 1;
+        for (int i = 0; i < this.hashCount; i++) {
+            this.decrement(Math.floorMod(hash + i * step, this.counterCount));
+        }
+        this.size.decrementAndGet();
+    }
+
+    /**
+     * @return false, if the UID was definitely never added (or was removed again), true if it may be present
+     */
+    public boolean mightContain(String uid) {
+        if (uid == null) return false;
+        long hash = hash64(uid);
+        long step = mix64(hash) | 1;
+        for (int i = 0; i < this.hashCount; i++) {
+            if (this.counter(Math.floorMod(hash + i * step, this.counterCount)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true, if more UIDs were added than the filter was sized for, so the false positive rate
+     * is getting worse than configured. The owner should then rebuild it with a larger size.
+     */
+    public boolean isOverloaded() {
+        return this.size.get() > this.expectedInsertions;
+    }
+
+    public long getExpectedInsertions() {
+        return expectedInsertions;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    private long counter(long position) {
+        long word = this.words.get((int) (position / COUNTERS_PER_WORD));
+        return (word >>> shiftOf(position)) & COUNTER_MASK;
+    }
+
+    private void increment(long position) {
+        int index = (int) (position / COUNTERS_PER_WORD);
+        int shift = shiftOf(position);
+        while (true) {
+            long word = this.words.get(index);
+            long counter = (word >>> shift) & COUNTER_MASK;
+            if (counter == COUNTER_MASK) return;
+            if (this.words.compareAndSet(index, word, word + (1L << shift))) return;
+        }
+    }
+
+    private void decrement(long position) {
+        int index = (int) (position / COUNTERS_PER_WORD);
+        int shift = shiftOf(position);
+        while (true) {
+            long word = this.words.get(index);
+            long counter = (word >>> shift) & COUNTER_MASK;
+            // saturated counters don't know their real count anymore and stay put
+            if (counter == 0 || counter == COUNTER_MASK) return;
+            if (this.words.compareAndSet(index, word, word - (1L << shift))) return;
+        }
+    }
+
+    private static int shiftOf(long position) {
+        return (int) (position % COUNTERS_PER_WORD) * 4;
+    }
+
+    private static long hash64(String uid) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < uid.length(); i++) {
+            hash ^= uid.charAt(i);
+            hash *= 0x100000001B3L;
+        }
+        return mix64(hash);
+    }
+
+    private static long mix64(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+}
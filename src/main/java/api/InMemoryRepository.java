@@ -3,39 +3,251 @@ package api;
 import model.Sample;
 import model.SampleResult;
 
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentSkipListSet;
 
+/**
+ * Keeps all Samples in the heap.
+ *
+ * The Samples are held in a {@link PersistentHashMap}. Every write builds a new version of the map, which
+ * shares everything but the changed path with the previous version, and publishes it with a single volatile
+ * write. Writers are serialized among each other, readers never wait: they simply grab the current version,
+ * see {@link #snapshot()}. Batch operations publish the whole batch as one version.
+ *
+ * For paged listings every {@link SampleResult} has a sorted index of UIDs, which is updated by the writers
+ * before they publish a new version.
+ *
+ * The repository can be persisted into binary snapshot files and restored from them, see
+ * {@link #writeSnapshot(Path)}, {@link #writeDeltaSnapshot(Path, PersistedSnapshot)} and {@link #restore(Path, List)}.
+ */
 public class InMemoryRepository implements BasicCrud {
 
-	private Map<String, Sample> sampleMap = new HashMap<>();
+	private static final Comparator<Sample> BY_UID = Comparator.comparing(Sample::getUID);
+
+	private final Object writeLock = new Object();
+
+	private volatile PersistentHashMap<String, Sample> sampleMap = PersistentHashMap.empty();
+
+	/**
+	 * UIDs by SampleResult, {@link SampleResult#ALL} holds the UIDs of all Samples.
+	 */
+	private final Map<SampleResult, ConcurrentSkipListSet<String>> uidIndex = new EnumMap<>(SampleResult.class);
+
+	public InMemoryRepository() {
+		for (SampleResult result : SampleResult.values()) {
+			this.uidIndex.put(result, new ConcurrentSkipListSet<>());
+		}
+	}
+
+	/**
+	 * Returns a consistent, immutable view of the repository in O(1), without locking or copying.
+	 *
+	 * @return the state of the repository after the last completed write.
+	 */
+	public SampleSnapshot snapshot() {
+		return new SampleSnapshot(this.sampleMap);
+	}
+
+	/**
+	 * Writes all Samples into a binary snapshot file. The version written is taken like {@link #snapshot()},
+	 * so writers are never paused while the file is written. The Samples are written in UID order, which
+	 * {@link #restore(Path, List)} can then load without sorting.
+	 *
+	 * @param file the snapshot file, which is replaced atomically if it exists
+	 * @return the written snapshot, the base for the first delta snapshot on top of it
+	 */
+	public PersistedSnapshot writeSnapshot(Path file) {
+		PersistentHashMap<String, Sample> map = this.sampleMap;
+		List<Sample> samples = new ArrayList<>(map.size());
+		// the index is already sorted, but it only matches the version if no UID was removed in the meantime
+		for (String uid : this.uidIndex.get(SampleResult.ALL)) {
+			Sample sample = map.get(uid);
+			if (sample != null) samples.add(sample);
+		}
+		if (samples.size() != map.size()) {
+			samples.clear();
+			map.forEach((uid, sample) -> samples.add(sample));
+			samples.sort(BY_UID);
+		}
+		long id = SnapshotFile.newId();
+		SnapshotFile.writeFull(file, id, samples);
+		return new PersistedSnapshot(this, id, map, map.size());
+	}
+
+	/**
+	 * Writes only the Samples put and the UIDs removed since the base snapshot. The changes are found by
+	 * comparing both versions of the map, skipping all the parts they still share, so the cost depends on
+	 * the number of changes rather than on the size of the repository.
+	 *
+	 * The file refers to the id of its base, so it is only accepted by {@link #restore(Path, List)} right
+	 * after the base.
+	 *
+	 * @param file the delta snapshot file, which is replaced atomically if it exists
+	 * @param base the snapshot written last in this chain of files
+	 * @return the written snapshot, the base for the next delta snapshot
+	 * @throws IllegalArgumentException if the base snapshot was written from another repository
+	 */
+	public PersistedSnapshot writeDeltaSnapshot(Path file, PersistedSnapshot base) {
+		if (base.getRepository() != this)
+			throw new IllegalArgumentException("The base snapshot was written from another repository.");
+		PersistentHashMap<String, Sample> map = this.sampleMap;
+		long id = SnapshotFile.newId();
+		int changes = SnapshotFile.writeDelta(file, id, map, base.getId(), base.getSamples());
+		return new PersistedSnapshot(this, id, map, changes);
+	}
+
+	/**
+	 * Rebuilds a repository from a full snapshot and the delta snapshots written after it. The snapshot files
+	 * are memory-mapped and their chunks decoded in parallel.
+	 *
+	 * @param fullSnapshot a file written by {@link #writeSnapshot(Path)}
+	 * @param deltaSnapshots the files written by {@link #writeDeltaSnapshot(Path, PersistedSnapshot)} since, each
+	 *                       on top of the one before it
+	 * @return the restored repository
+	 * @throws IllegalArgumentException if the files are not a full snapshot followed by its chain of delta snapshots
+	 */
+	public static InMemoryRepository restore(Path fullSnapshot, List<Path> deltaSnapshots) {
+		InMemoryRepository repository = new InMemoryRepository();
+		long id = repository.apply(fullSnapshot, 0);
+		for (Path deltaSnapshot : deltaSnapshots) {
+			id = repository.apply(deltaSnapshot, id);
+		}
+		return repository;
+	}
+
+	/**
+	 * @param baseId the id of the snapshot applied last, 0 to apply a full snapshot
+	 * @return the id of the applied snapshot
+	 */
+	private long apply(Path file, long baseId) {
+		SnapshotFile.Contents contents = SnapshotFile.read(file);
+		boolean delta = baseId != 0;
+		if (contents.isDelta() != delta)
+			throw new IllegalArgumentException(file + (delta ? " is not a delta snapshot." : " is not a full snapshot."));
+		if (contents.getBaseId() != baseId)
+			throw new IllegalArgumentException(file + " does not follow the snapshots applied before it.");
+
+		synchronized (this.writeLock) {
+			if (!delta) {
+				this.load(file, contents);
+				return contents.getId();
+			}
+			PersistentHashMap<String, Sample> map = this.sampleMap;
+			for (SnapshotFile.Chunk chunk : contents.getChunks()) {
+				for (Sample sample : chunk.getPuts()) {
+					map = this.put(map, sample);
+				}
+				for (String uid : chunk.getRemovals()) {
+					map = this.remove(map, uid);
+				}
+			}
+			if (map.size() != contents.getSize())
+				throw new IllegalArgumentException(file + " is corrupt.");
+			this.sampleMap = map;
+		}
+		return contents.getId();
+	}
+
+	/**
+	 * Loads a full snapshot into this empty repository. Instead of one put per Sample, the map is built in one
+	 * pass and the UID indexes are filled in UID order, then everything is published at once. Snapshots
+	 * written by {@link #writeSnapshot(Path)} are in UID order already, others are sorted first.
+	 * Must be called holding the write lock.
+	 */
+	private void load(Path file, SnapshotFile.Contents contents) {
+		List<Sample> samples = new ArrayList<>(contents.getSize());
+		for (SnapshotFile.Chunk chunk : contents.getChunks()) {
+			// a full snapshot holds no removals
+			samples.addAll(chunk.getPuts());
+		}
+		PersistentHashMap<String, Sample> map = PersistentHashMap.build(samples, Sample::getUID);
+		// a duplicate UID makes the map smaller, so after this check every Sample is in the map
+		if (map.size() != contents.getSize() || samples.size() != contents.getSize())
+			throw new IllegalArgumentException(file + " is corrupt.");
+
+		for (int i = 1; i < samples.size(); i++) {
+			if (BY_UID.compare(samples.get(i - 1), samples.get(i)) > 0) {
+				samples.sort(BY_UID);
+				break;
+			}
+		}
+		Map<SampleResult, List<String>> uidsByResult = new EnumMap<>(SampleResult.class);
+		for (SampleResult result : SampleResult.values()) {
+			uidsByResult.put(result, new ArrayList<>());
+		}
+		List<String> allUids = uidsByResult.get(SampleResult.ALL);
+		for (Sample sample : samples) {
+			allUids.add(sample.getUID());
+			if (sample.getSampleResult() != null && sample.getSampleResult() != SampleResult.ALL)
+				uidsByResult.get(sample.getSampleResult()).add(sample.getUID());
+		}
+		uidsByResult.entrySet().parallelStream()
+				.forEach(entry -> this.uidIndex.get(entry.getKey()).addAll(entry.getValue()));
+		this.sampleMap = map;
+	}
 
 	@Override
 	public List<Sample> listSamples() {
-		return new ArrayList<>(sampleMap.values());
+		SampleSnapshot snapshot = this.snapshot();
+		List<Sample> samples = new ArrayList<>(snapshot.size());
+		for (Sample sample : snapshot) {
+			samples.add(sample);
+		}
+		return samples;
 	}
 
 	@Override
 	public List<Sample> listSamples(SampleResult resultType) {
-		return sampleMap.values().stream()
-				.filter(sampleInList -> sampleInList.getSampleResult() == resultType)
-				.collect(Collectors.toList());
+		return this.snapshot().listSamples(resultType);
+	}
+
+	/**
+	 * Pages through the sorted UID index of the given resultType. Only the Samples of the page are looked up,
+	 * all in the same version of the repository.
+	 */
+	@Override
+	public SamplePage listSamples(SampleResult resultType, int pageSize, String continuationToken) {
+		if (resultType == null) throw new IllegalArgumentException("resultType must not be null.");
+		if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive.");
+		String after = continuationToken == null ? null : SamplePage.decodeToken(continuationToken, 1)[0];
+
+		PersistentHashMap<String, Sample> map = this.sampleMap;
+		NavigableSet<String> index = this.uidIndex.get(resultType);
+		List<Sample> page = new ArrayList<>(pageSize);
+		boolean hasMore = false;
+
+		for (String uid : after == null ? index : index.tailSet(after, false)) {
+			Sample sample = map.get(uid);
+			// the index may run ahead of or behind the version we read
+			if (sample == null || (resultType != SampleResult.ALL && sample.getSampleResult() != resultType))
+				continue;
+			if (page.size() == pageSize) {
+				hasMore = true;
+				break;
+			}
+			page.add(sample);
+		}
+
+		String nextToken = hasMore ? SamplePage.encodeToken(page.get(page.size() - 1).getUID()) : null;
+		return new SamplePage(page, nextToken);
 	}
 
 	/**
 	 * Inserts a Sample into the Map if the key is not yet in the map.
-	 * 
+	 *
 	 * @param sample - the Sample you wish to insert.
 	 * @return true, if the Sample was added, else false.
 	 */
 	@Override
 	public boolean insertSample(Sample sample) {
-		if (sample == null) return false;
-		if (sample.getSampleResult() == SampleResult.ALL) return false;
+		if (isRejected(sample)) return false;
 
-		if (!sampleMap.containsKey(sample.getUID())) {
-			sampleMap.put(sample.getUID(), sample);
-			return true;
+		synchronized (this.writeLock) {
+			if (!this.sampleMap.containsKey(sample.getUID())) {
+				this.sampleMap = this.put(this.sampleMap, sample);
+				return true;
+			}
 		}
 
 		return false;
@@ -44,30 +256,113 @@ public class InMemoryRepository implements BasicCrud {
 	@Override
 	public boolean insertSamples(List<Sample> samples) {
 		boolean insertedAll = true;
-		for(Sample sample : samples) {
-			if(!this.insertSample(sample)) {
-				insertedAll = false;
+		synchronized (this.writeLock) {
+			PersistentHashMap<String, Sample> map = this.sampleMap;
+			for (Sample sample : samples) {
+				if (isRejected(sample) || map.containsKey(sample.getUID())) {
+					insertedAll = false;
+				} else {
+					map = this.put(map, sample);
+				}
 			}
+			this.sampleMap = map;
 		}
 		return insertedAll;
 	}
 
 	@Override
 	public boolean updateSample(Sample updatedSample) {
-		if(!this.sampleMap.containsKey(updatedSample.getUID())) return false;
-		this.sampleMap.put(updatedSample.getUID(), updatedSample);
+		if (updatedSample.getUID() == null) return false;
+		synchronized (this.writeLock) {
+			if (!this.sampleMap.containsKey(updatedSample.getUID())) return false;
+			this.sampleMap = this.put(this.sampleMap, updatedSample);
+		}
 		return true;
 	}
 
 	@Override
 	public boolean upsertSample(Sample sample) {
-		this.sampleMap.put(sample.getUID(), sample);
+		if (sample == null || sample.getUID() == null) return false;
+		synchronized (this.writeLock) {
+			this.sampleMap = this.put(this.sampleMap, sample);
+		}
 		return true;
 	}
 
 	@Override
 	public boolean deleteSample(Sample sample) {
-		return (null != this.sampleMap.remove(sample.getUID()));
+		synchronized (this.writeLock) {
+			PersistentHashMap<String, Sample> map = this.sampleMap;
+			this.sampleMap = this.remove(map, sample.getUID());
+			return this.sampleMap != map;
+		}
+	}
+
+	@Override
+	public List<BatchOutcome> updateSamples(List<Sample> updatedSamples) {
+		List<BatchOutcome> outcomes = new ArrayList<>(updatedSamples.size());
+		synchronized (this.writeLock) {
+			PersistentHashMap<String, Sample> map = this.sampleMap;
+			for (Sample sample : updatedSamples) {
+				if (isRejected(sample)) {
+					outcomes.add(BatchOutcome.REJECTED);
+				} else if (map.containsKey(sample.getUID())) {
+					map = this.put(map, sample);
+					outcomes.add(BatchOutcome.UPDATED);
+				} else {
+					outcomes.add(BatchOutcome.NOT_FOUND);
+				}
+			}
+			this.sampleMap = map;
+		}
+		return outcomes;
+	}
+
+	@Override
+	public List<BatchOutcome> upsertSamples(List<Sample> samples) {
+		List<BatchOutcome> outcomes = new ArrayList<>(samples.size());
+		synchronized (this.writeLock) {
+			PersistentHashMap<String, Sample> map = this.sampleMap;
+			for (Sample sample : samples) {
+				if (isRejected(sample)) {
+					outcomes.add(BatchOutcome.REJECTED);
+				} else {
+					outcomes.add(map.containsKey(sample.getUID()) ? BatchOutcome.UPDATED : BatchOutcome.INSERTED);
+					map = this.put(map, sample);
+				}
+			}
+			this.sampleMap = map;
+		}
+		return outcomes;
+	}
+
+	@Override
+	public List<BatchOutcome> deleteSamples(List<Sample> samples) {
+		List<String> uids = new ArrayList<>(samples.size());
+		for (Sample sample : samples) {
+			uids.add(sample == null ? null : sample.getUID());
+		}
+		return this.deleteSamplesByUid(uids);
+	}
+
+	@Override
+	public List<BatchOutcome> deleteSamplesByUid(List<String> uids) {
+		List<BatchOutcome> outcomes = new ArrayList<>(uids.size());
+		synchronized (this.writeLock) {
+			PersistentHashMap<String, Sample> map = this.sampleMap;
+			for (String uid : uids) {
+				if (uid == null) {
+					outcomes.add(BatchOutcome.REJECTED);
+				} else if (map.containsKey(uid)) {
+					map = this.remove(map, uid);
+					outcomes.add(BatchOutcome.DELETED);
+				} else {
+					outcomes.add(BatchOutcome.NOT_FOUND);
+				}
+			}
+			this.sampleMap = map;
+		}
+		return outcomes;
 	}
 
 	@Override
@@ -75,4 +370,40 @@ public class InMemoryRepository implements BasicCrud {
 		return this.sampleMap.get(uid);
 	}
 
+	/**
+	 * Puts the Sample into the given version and updates the UID index. Must be called holding the write lock.
+	 */
+	private PersistentHashMap<String, Sample> put(PersistentHashMap<String, Sample> map, Sample sample) {
+		this.reindex(sample.getUID(), map.get(sample.getUID()), sample);
+		return map.put(sample.getUID(), sample);
+	}
+
+	/**
+	 * Removes the UID from the given version and the UID index. Must be called holding the write lock.
+	 */
+	private PersistentHashMap<String, Sample> remove(PersistentHashMap<String, Sample> map, String uid) {
+		Sample previous = map.get(uid);
+		if (previous == null) return map;
+		this.reindex(uid, previous, null);
+		return map.remove(uid);
+	}
+
+	private void reindex(String uid, Sample previous, Sample current) {
+		SampleResult previousResult = previous == null ? null : previous.getSampleResult();
+		SampleResult currentResult = current == null ? null : current.getSampleResult();
+		if (previousResult != currentResult && previousResult != null && previousResult != SampleResult.ALL)
+			this.uidIndex.get(previousResult).remove(uid);
+		if (currentResult != null && currentResult != SampleResult.ALL)
+			this.uidIndex.get(currentResult).add(uid);
+
+		if (current == null)
+			this.uidIndex.get(SampleResult.ALL).remove(uid);
+		else
+			this.uidIndex.get(SampleResult.ALL).add(uid);
+	}
+
+	private static boolean isRejected(Sample sample) {
+		return sample == null || sample.getUID() == null || sample.getSampleResult() == SampleResult.ALL;
+	}
+
 }
@@ -0,0 +1,56 @@
+package api;
+
+import model.Sample;
+
+/**
+ * A snapshot file written from an {@link InMemoryRepository}, and the version of the repository it holds.
+ *
+ * It is the base of the next delta snapshot, see
+ * {@link InMemoryRepository#writeDeltaSnapshot(java.nio.file.Path, PersistedSnapshot)}.
+ * Whoever writes a chain of snapshot files keeps the latest of these, so several chains of the same
+ * repository never mix. Until it is dropped, the version it holds is kept in memory, which costs about the
+ * size of the paths changed since.
+ */
+public final class PersistedSnapshot {
+
+    private final InMemoryRepository repository;
+    private final long id;
+    private final PersistentHashMap<String, Sample> samples;
+    private final int records;
+
+    PersistedSnapshot(InMemoryRepository repository, long id, PersistentHashMap<String, Sample> samples, int records) {
+        this.repository = repository;
+        this.id = id;
+        this.samples = samples;
+        this.records = records;
+    }
+
+    /**
+     * @return the id in the header of the file, which a delta snapshot on top of it refers to
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the number of Samples in the repository at the time the file was written
+     */
+    public int getSize() {
+        return samples.size();
+    }
+
+    /**
+     * @return the number of Samples written for a full snapshot, the number of changes for a delta snapshot
+     */
+    public int getRecords() {
+        return records;
+    }
+
+    InMemoryRepository getRepository() {
+        return repository;
+    }
+
+    PersistentHashMap<String, Sample> getSamples() {
+        return samples;
+    }
+}
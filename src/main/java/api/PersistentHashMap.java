@@ -0,0 +1,603 @@
+package api;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable hash array mapped trie (HAMT). Every modification returns a new map which shares all
+ * untouched nodes with the map it was derived from, so a modification only copies the path from the
+ * root to the changed entry (at most 7 small arrays) and an existing map can be handed to readers
+ * without ever being copied or locked.
+ *
+ * Keys must not be {@code null}.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+final class PersistentHashMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Builds a map of the values in one pass, without the path copying of {@link #put}: the entries are
+     * partitioned by hash level by level and every node is created exactly once. The subtrees below the root
+     * are built in parallel. Later values replace earlier ones with the same key, like a sequence of puts.
+     *
+     * @param keyOf derives the key of a value
+     */
+    static <K, V> PersistentHashMap<K, V> build(List<? extends V> values, Function<? super V, ? extends K> keyOf) {
+        int count = values.size();
+        if (count == 0) return empty();
+        Object[] keys = new Object[count];
+        Object[] entryValues = new Object[count];
+        int[] hashes = new int[count];
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            V value = Objects.requireNonNull(values.get(i), "value");
+            K key = Objects.requireNonNull(keyOf.apply(value), "key");
+            keys[i] = key;
+            entryValues[i] = value;
+            hashes[i] = hash(key);
+            order[i] = i;
+        }
+        Builder builder = new Builder(keys, entryValues, hashes);
+        int[] bounds = builder.partition(order, 0, count, 0);
+
+        Object[][] slots = new Object[1 << BITS][];
+        int[] sizes = new int[1 << BITS];
+        IntStream.range(0, 1 << BITS).parallel()
+                .filter(bucket -> bounds[bucket] < bounds[bucket + 1])
+                .forEach(bucket -> {
+                    int[] size = new int[1];
+                    slots[bucket] = builder.slot(order, bounds[bucket], bounds[bucket + 1], BITS, size);
+                    sizes[bucket] = size[0];
+                });
+        int size = 0;
+        for (int bucketSize : sizes) size += bucketSize;
+        return new PersistentHashMap<>(Builder.node(slots), size);
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        if (key == null || this.root == null) return null;
+        return (V) this.root.get(0, hash(key), key);
+    }
+
+    boolean containsKey(Object key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * @return a map which maps the key to the value, or this map if it already does so
+     */
+    PersistentHashMap<K, V> put(K key, V value) {
+        Objects.requireNonNull(key, "key");
+        Objects.requireNonNull(value, "value");
+        boolean[] added = new boolean[1];
+        Node start = this.root == null ? BitmapNode.EMPTY : this.root;
+        Node newRoot = start.put(0, hash(key), key, value, added);
+        if (newRoot == this.root) return this;
+        return new PersistentHashMap<>(newRoot, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * @return a map without the key, or this map if it does not contain the key
+     */
+    PersistentHashMap<K, V> remove(Object key) {
+        if (key == null || this.root == null) return this;
+        Node newRoot = this.root.remove(0, hash(key), key);
+        if (newRoot == this.root) return this;
+        return new PersistentHashMap<>(newRoot, this.size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    void forEach(BiConsumer<? super K, ? super V> action) {
+        if (this.root != null)
+            this.root.forEach((BiConsumer<Object, Object>) action);
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<>(this.root);
+    }
+
+    /**
+     * Reports every difference between this map and another version of it. Subtrees both versions share
+     * are skipped by identity, so for versions derived from each other the cost is proportional to the
+     * number of changes, not to the size of the maps. Values are compared by identity as well.
+     *
+     * @param older the version to compare against
+     * @param changed receives every entry that is new or has a different value in this map
+     * @param removed receives every key of the older version that is not in this map
+     */
+    @SuppressWarnings("unchecked")
+    void diff(PersistentHashMap<K, V> older, BiConsumer<? super K, ? super V> changed, Consumer<? super K> removed) {
+        diffNodes(this.root, older.root, (BiConsumer<Object, Object>) changed, (Consumer<Object>) removed);
+    }
+
+    private static void diffNodes(Node current, Node older, BiConsumer<Object, Object> changed, Consumer<Object> removed) {
+        if (current == older) return;
+        if (current == null) {
+            older.forEach((key, value) -> removed.accept(key));
+        } else if (older == null) {
+            current.forEach(changed);
+        } else if (current instanceof BitmapNode && older instanceof BitmapNode) {
+            BitmapNode currentNode = (BitmapNode) current;
+            BitmapNode olderNode = (BitmapNode) older;
+            int bits = currentNode.bitmap | olderNode.bitmap;
+            while (bits != 0) {
+                int bit = bits & -bits;
+                bits &= bits - 1;
+                if ((olderNode.bitmap & bit) == 0) {
+                    forEachInSlot(currentNode.slotKey(bit), currentNode.slotValue(bit), changed);
+                } else if ((currentNode.bitmap & bit) == 0) {
+                    forEachInSlot(olderNode.slotKey(bit), olderNode.slotValue(bit), (key, value) -> removed.accept(key));
+                } else {
+                    diffSlots(currentNode.slotKey(bit), currentNode.slotValue(bit),
+                            olderNode.slotKey(bit), olderNode.slotValue(bit), changed, removed);
+                }
+            }
+        } else {
+            diffEntries(null, current, null, older, changed, removed);
+        }
+    }
+
+    private static void diffSlots(Object currentKey, Object currentValue, Object olderKey, Object olderValue,
+                                  BiConsumer<Object, Object> changed, Consumer<Object> removed) {
+        if (currentKey == null && olderKey == null) {
+            diffNodes((Node) currentValue, (Node) olderValue, changed, removed);
+        } else if (currentKey != null && olderKey != null) {
+            if (!currentKey.equals(olderKey)) {
+                changed.accept(currentKey, currentValue);
+                removed.accept(olderKey);
+            } else if (currentValue != olderValue) {
+                changed.accept(currentKey, currentValue);
+            }
+        } else {
+            diffEntries(currentKey, currentValue, olderKey, olderValue, changed, removed);
+        }
+    }
+
+    /**
+     * Compares two slots entry by entry, for the rare cases in which both versions are structured
+     * differently, e.g. an entry in one version and a subtree in the other.
+     */
+    private static void diffEntries(Object currentKey, Object currentValue, Object olderKey, Object olderValue,
+                                    BiConsumer<Object, Object> changed, Consumer<Object> removed) {
+        Map<Object, Object> olderEntries = new HashMap<>();
+        forEachInSlot(olderKey, olderValue, olderEntries::put);
+        forEachInSlot(currentKey, currentValue, (key, value) -> {
+            if (olderEntries.remove(key) != value) changed.accept(key, value);
+        });
+        olderEntries.keySet().forEach(removed);
+    }
+
+    /**
+     * Visits a slot, which is either a key and its value or, with a {@code null} key, a node.
+     */
+    private static void forEachInSlot(Object keyOrNull, Object valueOrNode, BiConsumer<Object, Object> action) {
+        if (keyOrNull == null)
+            ((Node) valueOrNode).forEach(action);
+        else
+            action.accept(keyOrNull, valueOrNode);
+    }
+
+    /**
+     * Builds the nodes for {@link #build}. The entries are addressed by their position in the arrays, and
+     * every level sorts the positions of its range by the hash bits of that level.
+     */
+    private static final class Builder {
+
+        private final Object[] keys;
+        private final Object[] values;
+        private final int[] hashes;
+
+        Builder(Object[] keys, Object[] values, int[] hashes) {
+            this.keys = keys;
+            this.values = values;
+            this.hashes = hashes;
+        }
+
+        /**
+         * Sorts {@code order[from, to)} by the hash bits at {@code shift}, keeping the order of equal bits.
+         *
+         * @return the start of every bucket, followed by {@code to}
+         */
+        int[] partition(int[] order, int from, int to, int shift) {
+            int[] bounds = new int[(1 << BITS) + 1];
+            for (int i = from; i < to; i++) {
+                bounds[((this.hashes[order[i]] >>> shift) & MASK) + 1]++;
+            }
+            bounds[0] = from;
+            for (int bucket = 0; bucket < 1 << BITS; bucket++) {
+                bounds[bucket + 1] += bounds[bucket];
+            }
+            int[] sorted = new int[to - from];
+            int[] next = Arrays.copyOf(bounds, 1 << BITS);
+            for (int i = from; i < to; i++) {
+                int position = order[i];
+                sorted[next[(this.hashes[position] >>> shift) & MASK]++ - from] = position;
+            }
+            System.arraycopy(sorted, 0, order, from, sorted.length);
+            return bounds;
+        }
+
+        /**
+         * @return the slot for the entries {@code order[from, to)}, which share the hash bits below {@code shift}:
+         * the key and value of a single entry, or {@code null} and a node
+         */
+        Object[] slot(int[] order, int from, int to, int shift, int[] size) {
+            int first = order[from];
+            if (to - from == 1) {
+                size[0]++;
+                return new Object[]{this.keys[first], this.values[first]};
+            }
+            boolean sameHash = true;
+            for (int i = from + 1; i < to && sameHash; i++) {
+                sameHash = this.hashes[order[i]] == this.hashes[first];
+            }
+            if (!sameHash) {
+                int[] bounds = this.partition(order, from, to, shift);
+                Object[][] slots = new Object[1 << BITS][];
+                for (int bucket = 0; bucket < 1 << BITS; bucket++) {
+                    if (bounds[bucket] < bounds[bucket + 1])
+                        slots[bucket] = this.slot(order, bounds[bucket], bounds[bucket + 1], shift + BITS, size);
+                }
+                return new Object[]{null, node(slots)};
+            }
+
+            // equal hashes, later values replace earlier ones of the same key
+            Map<Object, Object> entries = new LinkedHashMap<>();
+            for (int i = from; i < to; i++) {
+                entries.put(this.keys[order[i]], this.values[order[i]]);
+            }
+            size[0] += entries.size();
+            if (entries.size() == 1) {
+                Map.Entry<Object, Object> entry = entries.entrySet().iterator().next();
+                return new Object[]{entry.getKey(), entry.getValue()};
+            }
+            Object[] array = new Object[2 * entries.size()];
+            int index = 0;
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                array[index++] = entry.getKey();
+                array[index++] = entry.getValue();
+            }
+            return new Object[]{null, new CollisionNode(this.hashes[first], array)};
+        }
+
+        /**
+         * @param slots the slot of every bucket, {@code null} for empty ones
+         */
+        static BitmapNode node(Object[][] slots) {
+            int bitmap = 0;
+            int occupied = 0;
+            for (int bucket = 0; bucket < slots.length; bucket++) {
+                if (slots[bucket] == null) continue;
+                bitmap |= 1 << bucket;
+                occupied++;
+            }
+            Object[] array = new Object[2 * occupied];
+            int index = 0;
+            for (Object[] slot : slots) {
+                if (slot == null) continue;
+                array[index++] = slot[0];
+                array[index++] = slot[1];
+            }
+            return new BitmapNode(bitmap, array);
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private abstract static class Node {
+
+        abstract Object get(int shift, int hash, Object key);
+
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * @return the node without the key, this node if it doesn't contain the key, or null if it became empty
+         */
+        abstract Node remove(int shift, int hash, Object key);
+
+        abstract void forEach(BiConsumer<Object, Object> action);
+
+        /**
+         * The entries of a node are stored pairwise in one array: a key followed by its value, or
+         * {@code null} followed by a child node.
+         */
+        abstract Object[] slots();
+    }
+
+    /**
+     * A node with up to 32 slots, one for each 5 bit chunk of the hash at this level. Only occupied slots
+     * are stored, the bitmap tells which ones are occupied.
+     */
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+        private final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        Object slotKey(int bit) {
+            return this.array[2 * this.index(bit)];
+        }
+
+        Object slotValue(int bit) {
+            return this.array[2 * this.index(bit) + 1];
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((this.bitmap & bit) == 0) return null;
+            int idx = this.index(bit);
+            Object keyOrNull = this.array[2 * idx];
+            Object valueOrNode = this.array[2 * idx + 1];
+            if (keyOrNull == null) return ((Node) valueOrNode).get(shift + BITS, hash, key);
+            return key.equals(keyOrNull) ? valueOrNode : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int idx = this.index(bit);
+
+            if ((this.bitmap & bit) == 0) {
+                Object[] newArray = new Object[this.array.length + 2];
+                System.arraycopy(this.array, 0, newArray, 0, 2 * idx);
+                newArray[2 * idx] = key;
+                newArray[2 * idx + 1] = value;
+                System.arraycopy(this.array, 2 * idx, newArray, 2 * idx + 2, this.array.length - 2 * idx);
+                added[0] = true;
+                return new BitmapNode(this.bitmap | bit, newArray);
+            }
+
+            Object keyOrNull = this.array[2 * idx];
+            Object valueOrNode = this.array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node child = (Node) valueOrNode;
+                Node newChild = child.put(shift + BITS, hash, key, value, added);
+                return newChild == child ? this : this.withSlot(idx, null, newChild);
+            }
+            if (key.equals(keyOrNull)) {
+                return valueOrNode == value ? this : this.withSlot(idx, keyOrNull, value);
+            }
+            added[0] = true;
+            Node child = createNode(shift + BITS, keyOrNull, valueOrNode, hash, key, value);
+            return this.withSlot(idx, null, child);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((this.bitmap & bit) == 0) return this;
+            int idx = this.index(bit);
+            Object keyOrNull = this.array[2 * idx];
+            Object valueOrNode = this.array[2 * idx + 1];
+
+            if (keyOrNull == null) {
+                Node child = (Node) valueOrNode;
+                Node newChild = child.remove(shift + BITS, hash, key);
+                if (newChild == child) return this;
+                if (newChild != null) return this.withSlot(idx, null, newChild);
+            } else if (!key.equals(keyOrNull)) {
+                return this;
+            }
+
+            if (this.bitmap == bit) return null;
+            Object[] newArray = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, newArray, 0, 2 * idx);
+            System.arraycopy(this.array, 2 * idx + 2, newArray, 2 * idx, newArray.length - 2 * idx);
+            return new BitmapNode(this.bitmap ^ bit, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < this.array.length; i += 2) {
+                if (this.array[i] == null)
+                    ((Node) this.array[i + 1]).forEach(action);
+                else
+                    action.accept(this.array[i], this.array[i + 1]);
+            }
+        }
+
+        @Override
+        Object[] slots() {
+            return this.array;
+        }
+
+        private BitmapNode withSlot(int idx, Object key, Object valueOrNode) {
+            Object[] newArray = this.array.clone();
+            newArray[2 * idx] = key;
+            newArray[2 * idx + 1] = valueOrNode;
+            return new BitmapNode(this.bitmap, newArray);
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2)
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            boolean[] ignored = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, ignored).put(shift, hash2, key2, value2, ignored);
+        }
+    }
+
+    /**
+     * Holds the entries of keys with identical hashes.
+     */
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+        private final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < this.array.length; i += 2) {
+                if (key.equals(this.array[i])) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(int shift, int hash, Object key) {
+            if (hash != this.hash) return null;
+            int idx = this.indexOf(key);
+            return idx < 0 ? null : this.array[idx + 1];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // push this node one level down next to the new entry
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[]{null, this}).put(shift, hash, key, value, added);
+            }
+            int idx = this.indexOf(key);
+            if (idx >= 0) {
+                if (this.array[idx + 1] == value) return this;
+                Object[] newArray = this.array.clone();
+                newArray[idx + 1] = value;
+                return new CollisionNode(hash, newArray);
+            }
+            Object[] newArray = Arrays.copyOf(this.array, this.array.length + 2);
+            newArray[this.array.length] = key;
+            newArray[this.array.length + 1] = value;
+            added[0] = true;
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            if (hash != this.hash) return this;
+            int idx = this.indexOf(key);
+            if (idx < 0) return this;
+            if (this.array.length == 2) return null;
+            Object[] newArray = new Object[this.array.length - 2];
+            System.arraycopy(this.array, 0, newArray, 0, idx);
+            System.arraycopy(this.array, idx + 2, newArray, idx, newArray.length - idx);
+            return new CollisionNode(hash, newArray);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < this.array.length; i += 2) {
+                action.accept(this.array[i], this.array[i + 1]);
+            }
+        }
+
+        @Override
+        Object[] slots() {
+            return this.array;
+        }
+    }
+
+    /**
+     * Walks the trie depth-first with an explicit stack, so iterating doesn't need to copy anything.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Deque<Object[]> slotStack = new ArrayDeque<>();
+        private final Deque<Integer> positionStack = new ArrayDeque<>();
+        private Object[] slots;
+        private int position;
+        private Map.Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            this.slots = root == null ? new Object[0] : root.slots();
+            this.advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            this.next = null;
+            while (this.next == null) {
+                if (this.position < this.slots.length) {
+                    Object keyOrNull = this.slots[this.position];
+                    Object valueOrNode = this.slots[this.position + 1];
+                    this.position += 2;
+                    if (keyOrNull == null) {
+                        this.slotStack.push(this.slots);
+                        this.positionStack.push(this.position);
+                        this.slots = ((Node) valueOrNode).slots();
+                        this.position = 0;
+                    } else {
+                        this.next = new AbstractMap.SimpleImmutableEntry<>((K) keyOrNull, (V) valueOrNode);
+                    }
+                } else if (!this.slotStack.isEmpty()) {
+                    this.slots = this.slotStack.pop();
+                    this.position = this.positionStack.pop();
+                } else {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (this.next == null) throw new NoSuchElementException();
+            Map.Entry<K, V> current = this.next;
+            this.advance();
+            return current;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package api;
+
+import model.Sample;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * One page of Samples returned by {@link BasicCrud#listSamples(model.SampleResult, int, String)}, together
+ * with the continuation token for the next page.
+ */
+public final class SamplePage {
+
+    private static final String SEPARATOR = "\u0000";
+
+    private final List<Sample> samples;
+    private final String continuationToken;
+
+    public SamplePage(List<Sample> samples, String continuationToken) {
+        this.samples = Collections.unmodifiableList(samples);
+        this.continuationToken = continuationToken;
+    }
+
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the opaque token to pass in for the next page -or- {@code null}, if this is the last page
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    public boolean hasMore() {
+        return continuationToken != null;
+    }
+
+    /**
+     * Packs the position of a page into an opaque, URL-safe continuation token.
+     * Only meant to be used by {@link BasicCrud} implementations.
+     *
+     * @param parts the implementation specific position, e.g. the last UID of a page
+     * @return the continuation token
+     */
+    public static String encodeToken(String... parts) {
+        String joined = String.join(SEPARATOR, parts);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The reverse of {@link #encodeToken(String...)}.
+     *
+     * @param token the continuation token
+     * @param expectedParts the number of parts the implementation put into the token
+     * @return the parts of the token
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static String[] decodeToken(String token, int expectedParts) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                .split(Pattern.quote(SEPARATOR), -1);
+        if (parts.length != expectedParts)
+            throw new IllegalArgumentException("Malformed continuation token: " + token);
+        return parts;
+    }
+}
@@ -0,0 +1,76 @@
+package api;
+
+import model.Sample;
+import model.SampleResult;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable, consistent view of all Samples of an {@link InMemoryRepository} at one point in time.
+ *
+ * Taking a snapshot neither copies nor locks anything, and writes into the repository after the snapshot
+ * was taken are never visible through it. A snapshot can therefore be scanned for as long as needed while
+ * the repository keeps accepting writes.
+ */
+public final class SampleSnapshot implements Iterable<Sample> {
+
+    private final PersistentHashMap<String, Sample> samples;
+
+    SampleSnapshot(PersistentHashMap<String, Sample> samples) {
+        this.samples = samples;
+    }
+
+    public int size() {
+        return this.samples.size();
+    }
+
+    /**
+     * @param uid The UUID of a sample
+     * @return The Sample with matching UUID at the time of the snapshot -or- {@code null}
+     */
+    public Sample retrieve(String uid) {
+        return this.samples.get(uid);
+    }
+
+    @Override
+    public Iterator<Sample> iterator() {
+        Iterator<Map.Entry<String, Sample>> entries = this.samples.iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return entries.hasNext();
+            }
+
+            @Override
+            public Sample next() {
+                return entries.next().getValue();
+            }
+        };
+    }
+
+    public Stream<Sample> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(this.iterator(), this.size(),
+                Spliterator.SIZED | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * @param resultType acts as a filter criteria
+     * @return a new list of all samples of the snapshot with the designated {@link SampleResult}
+     */
+    public List<Sample> listSamples(SampleResult resultType) {
+        return this.stream()
+                .filter(sample -> sample.getSampleResult() == resultType)
+                .collect(Collectors.toList());
+    }
+
+    PersistentHashMap<String, Sample> map() {
+        return this.samples;
+    }
+}
@@ -0,0 +1,344 @@
+package api;
+
+import model.Sample;
+import model.SampleResult;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Reads and writes the binary snapshot files of an {@link InMemoryRepository}.
+ *
+ * A full snapshot holds all Samples of one version of the repository, a delta snapshot the Samples that were
+ * put and the UIDs that were removed since the snapshot it is based on. Every file has a random id, and a
+ * delta snapshot names the id of its base, so a chain of files can only be applied in the order it was
+ * written. The records are grouped into chunks, which are decoded in parallel straight from a memory-mapped
+ * file when the snapshot is read. The layout is
+ * <pre>
+ * header:    int magic, int version, byte kind (0 full, 1 delta), long id, long base id (0 for a full
+ *            snapshot), int size of the repository afterwards
+ * chunks:    records, one chunk after the other
+ * directory: int chunkCount, per chunk: long offset, int length, int recordCount, int crc32
+ * trailer:   long directoryOffset, int magic
+ * </pre>
+ * A record is a byte (0 put, 1 remove) and the UID, a put continues with the double value, the date and
+ * the byte result ordinal (-1 for none). Strings are stored as an unsigned short length (0xFFFF for
+ * {@code null}) followed by their UTF-8 bytes.
+ */
+final class SnapshotFile {
+
+    private static final int MAGIC = 0x4243534E; // "BCSN"
+    private static final int VERSION = 2;
+    private static final int HEADER_LENGTH = 29;
+    private static final int TRAILER_LENGTH = 12;
+    private static final int DIRECTORY_ENTRY_LENGTH = 20;
+    private static final int CHUNK_RECORDS = 16_384;
+    private static final byte PUT = 0;
+    private static final byte REMOVE = 1;
+    private static final int NULL_STRING = 0xFFFF;
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * The decoded content of a snapshot file.
+     */
+    static final class Contents {
+
+        private final boolean delta;
+        private final long id;
+        private final long baseId;
+        private final int size;
+        private final List<Chunk> chunks;
+
+        private Contents(boolean delta, long id, long baseId, int size, List<Chunk> chunks) {
+            this.delta = delta;
+            this.id = id;
+            this.baseId = baseId;
+            this.size = size;
+            this.chunks = chunks;
+        }
+
+        boolean isDelta() {
+            return delta;
+        }
+
+        long getId() {
+            return id;
+        }
+
+        /**
+         * @return the id of the snapshot a delta snapshot must be applied to, 0 for a full snapshot
+         */
+        long getBaseId() {
+            return baseId;
+        }
+
+        /**
+         * @return the number of Samples in the repository once the snapshot is applied
+         */
+        int getSize() {
+            return size;
+        }
+
+        List<Chunk> getChunks() {
+            return chunks;
+        }
+    }
+
+    static final class Chunk {
+
+        private final List<Sample> puts = new ArrayList<>();
+        private final List<String> removals = new ArrayList<>();
+
+        List<Sample> getPuts() {
+            return puts;
+        }
+
+        List<String> getRemovals() {
+            return removals;
+        }
+    }
+
+    /**
+     * @return a random id for a new snapshot file, never 0
+     */
+    static long newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    /**
+     * Writes all Samples of one version, in the given order.
+     */
+    static void writeFull(Path path, long id, List<Sample> samples) {
+        write(path, false, id, 0, samples.size(), samples, new ArrayList<>());
+    }
+
+    /**
+     * Writes the differences between two versions, found by {@link PersistentHashMap#diff}.
+     *
+     * @param baseId the id of the snapshot file the base version was written to
+     * @return the number of records written
+     */
+    static int writeDelta(Path path, long id, PersistentHashMap<String, Sample> samples,
+                          long baseId, PersistentHashMap<String, Sample> base) {
+        List<Sample> changed = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        samples.diff(base, (uid, sample) -> changed.add(sample), removed::add);
+        write(path, true, id, baseId, samples.size(), changed, removed);
+        return changed.size() + removed.size();
+    }
+
+    /**
+     * Maps the file into memory and decodes its chunks in parallel.
+     */
+    static Contents read(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_LENGTH + TRAILER_LENGTH)
+                throw new IOException("Snapshot file is truncated.");
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+            ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, fileSize - TRAILER_LENGTH, TRAILER_LENGTH);
+            long directoryOffset = trailer.getLong();
+            if (header.getInt() != MAGIC || trailer.getInt() != MAGIC)
+                throw new IOException("Not a snapshot file.");
+            if (header.getInt() != VERSION)
+                throw new IOException("Unsupported snapshot file version.");
+            boolean delta = header.get() == 1;
+            long id = header.getLong();
+            long baseId = header.getLong();
+            int size = header.getInt();
+            if (directoryOffset < HEADER_LENGTH || directoryOffset > fileSize - TRAILER_LENGTH)
+                throw new IOException("Snapshot file directory is corrupt.");
+
+            ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, directoryOffset,
+                    fileSize - TRAILER_LENGTH - directoryOffset);
+            int chunkCount = directory.getInt();
+            if (directory.remaining() != (long) chunkCount * DIRECTORY_ENTRY_LENGTH)
+                throw new IOException("Snapshot file directory is corrupt.");
+            List<ByteBuffer> chunkBuffers = new ArrayList<>(chunkCount);
+            int[] recordCounts = new int[chunkCount];
+            int[] checksums = new int[chunkCount];
+            for (int i = 0; i < chunkCount; i++) {
+                long offset = directory.getLong();
+                int length = directory.getInt();
+                recordCounts[i] = directory.getInt();
+                checksums[i] = directory.getInt();
+                if (offset < HEADER_LENGTH || offset + length > directoryOffset)
+                    throw new IOException("Snapshot file directory is corrupt.");
+                // mappings stay valid after the channel is closed
+                chunkBuffers.add(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+            }
+
+            List<Chunk> chunks = IntStream.range(0, chunkCount).parallel()
+                    .mapToObj(i -> decode(chunkBuffers.get(i), recordCounts[i], checksums[i], path))
+                    .collect(Collectors.toList());
+            return new Contents(delta, id, baseId, size, chunks);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not read snapshot file " + path.toString()));
+        }
+    }
+
+    private static void write(Path path, boolean delta, long id, long baseId, int size,
+                              List<Sample> puts, List<String> removals) {
+        Path tempFile = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (OutputStream file = Files.newOutputStream(tempFile);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(delta ? 1 : 0);
+                out.writeLong(id);
+                out.writeLong(baseId);
+                out.writeInt(size);
+
+                ChunkWriter chunks = new ChunkWriter(out);
+                for (Sample sample : puts) {
+                    chunks.put(sample);
+                }
+                for (String uid : removals) {
+                    chunks.remove(uid);
+                }
+                chunks.finish();
+            }
+            try (FileChannel written = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                written.force(true);
+            }
+            try {
+                Files.move(tempFile, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not write snapshot file " + path.toString()));
+        }
+    }
+
+    private static Chunk decode(ByteBuffer buffer, int records, int checksum, Path path) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate());
+        if ((int) crc.getValue() != checksum)
+            throw new UncheckedIOException(new IOException("Snapshot file " + path + " is corrupt."));
+
+        SampleResult[] results = SampleResult.values();
+        Chunk chunk = new Chunk();
+        for (int i = 0; i < records; i++) {
+            byte kind = buffer.get();
+            String uid = readString(buffer);
+            if (kind == REMOVE) {
+                chunk.removals.add(uid);
+                continue;
+            }
+            double value = buffer.getDouble();
+            String date = readString(buffer);
+            byte result = buffer.get();
+            chunk.puts.add(new Sample(uid, value, date, result < 0 ? null : results[result]));
+        }
+        return chunk;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getChar();
+        if (length == NULL_STRING) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Collects records into chunks and writes every chunk and its directory entry once it is full.
+     */
+    private static final class ChunkWriter {
+
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream(1024 * 1024);
+        private final DataOutputStream chunk = new DataOutputStream(this.chunkBytes);
+        private final ByteArrayOutputStream directoryBytes = new ByteArrayOutputStream();
+        private final DataOutputStream directory = new DataOutputStream(this.directoryBytes);
+        private long position = HEADER_LENGTH;
+        private int records;
+        private int chunkCount;
+
+        ChunkWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void put(Sample sample) throws IOException {
+            this.chunk.writeByte(PUT);
+            this.writeString(sample.getUID());
+            this.chunk.writeDouble(sample.getSampleValue());
+            this.writeString(sample.getSampleDate());
+            this.chunk.writeByte(sample.getSampleResult() == null ? -1 : sample.getSampleResult().ordinal());
+            this.recordWritten();
+        }
+
+        void remove(String uid) throws IOException {
+            this.chunk.writeByte(REMOVE);
+            this.writeString(uid);
+            this.recordWritten();
+        }
+
+        void finish() throws IOException {
+            if (this.records > 0) this.flushChunk();
+            this.out.writeInt(this.chunkCount);
+            this.directoryBytes.writeTo(this.out);
+            this.out.writeLong(this.position);
+            this.out.writeInt(MAGIC);
+        }
+
+        private void writeString(String value) throws IOException {
+            if (value == null) {
+                this.chunk.writeShort(NULL_STRING);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length >= NULL_STRING) throw new IOException("String too long for a snapshot file.");
+            this.chunk.writeShort(bytes.length);
+            this.chunk.write(bytes);
+        }
+
+        private void recordWritten() throws IOException {
+            if (++this.records == CHUNK_RECORDS) this.flushChunk();
+        }
+
+        private void flushChunk() throws IOException {
+            byte[] bytes = this.chunkBytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            this.out.write(bytes);
+
+            this.directory.writeLong(this.position);
+            this.directory.writeInt(bytes.length);
+            this.directory.writeInt(this.records);
+            this.directory.writeInt((int) crc.getValue());
+            this.position += bytes.length;
+            this.chunkCount++;
+            this.records = 0;
+            this.chunkBytes.reset();
+        }
+    }
+}
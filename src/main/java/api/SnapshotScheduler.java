@@ -0,0 +1,162 @@
+package api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Periodically persists an {@link InMemoryRepository} into a directory of snapshot files, and restores the
+ * latest state from such a directory at startup.
+ *
+ * Every run writes a delta snapshot, and every {@code deltasPerFull + 1}th run a full one, after which all
+ * older files are deleted. The files are numbered in the order they were written, e.g.
+ * {@code 0000000000000000007.full} followed by {@code 0000000000000000008.delta}.
+ *
+ * The scheduler keeps the snapshot it wrote last as the base of its next delta snapshot, so snapshots of the
+ * same repository written by anyone else don't affect its chain of files.
+ */
+public class SnapshotScheduler implements AutoCloseable {
+
+    private static final String FULL = ".full";
+    private static final String DELTA = ".delta";
+
+    private final InMemoryRepository repository;
+    private final Path directory;
+    private final int deltasPerFull;
+    private final ScheduledExecutorService executor;
+
+    private long sequence;
+    private int deltasSinceFull;
+    /** The base of the next delta snapshot, {@code null} until the first full snapshot is written. */
+    private PersistedSnapshot lastSnapshot;
+
+    /**
+     * @param repository the repository to persist
+     * @param directory the directory for the snapshot files, which is created if it doesn't exist
+     * @param interval the time between two snapshots
+     * @param deltasPerFull the number of delta snapshots between two full ones, 0 for full snapshots only
+     */
+    public SnapshotScheduler(InMemoryRepository repository, Path directory, Duration interval, int deltasPerFull) {
+        if (deltasPerFull < 0) throw new IllegalArgumentException("deltasPerFull must not be negative.");
+        this.repository = repository;
+        this.directory = directory;
+        this.deltasPerFull = deltasPerFull;
+        try {
+            Files.createDirectories(directory);
+            List<Path> files = snapshotFiles(directory);
+            this.sequence = files.isEmpty() ? 0 : sequenceOf(files.get(files.size() - 1));
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not open snapshot directory " + directory.toString()));
+        }
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "in-memory-repository-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        this.executor.scheduleWithFixedDelay(this::snapshotInBackground, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Restores the repository from the latest full snapshot in the directory and all delta snapshots after it.
+     *
+     * @return the restored repository, or an empty one if the directory holds no full snapshot
+     */
+    public static InMemoryRepository restoreLatest(Path directory) {
+        if (!Files.isDirectory(directory)) return new InMemoryRepository();
+        try {
+            List<Path> files = snapshotFiles(directory);
+            for (int i = files.size() - 1; i >= 0; i--) {
+                if (files.get(i).getFileName().toString().endsWith(FULL))
+                    return InMemoryRepository.restore(files.get(i), files.subList(i + 1, files.size()));
+            }
+            return new InMemoryRepository();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not read snapshot directory " + directory.toString()));
+        }
+    }
+
+    /**
+     * Writes the next snapshot right away, instead of waiting for the schedule.
+     *
+     * @return the written snapshot file
+     */
+    public synchronized Path snapshotNow() {
+        // the first snapshot is always a full one, the repository may not match the files in the directory
+        boolean full = this.lastSnapshot == null || this.deltasSinceFull >= this.deltasPerFull;
+        Path file = this.directory.resolve(String.format("%019d", this.sequence + 1) + (full ? FULL : DELTA));
+        if (full)
+            this.lastSnapshot = this.repository.writeSnapshot(file);
+        else
+            this.lastSnapshot = this.repository.writeDeltaSnapshot(file, this.lastSnapshot);
+        this.sequence++;
+        this.deltasSinceFull = full ? 0 : this.deltasSinceFull + 1;
+
+        if (full) this.deleteFilesBefore(this.sequence);
+        return file;
+    }
+
+    /**
+     * Stops the schedule, waiting for a snapshot that is being written.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void snapshotInBackground() {
+        try {
+            this.snapshotNow();
+        } catch (RuntimeException e) {
+            // keep the schedule alive, the next run will try again
+            e.printStackTrace();
+        }
+    }
+
+    private void deleteFilesBefore(long fullSequence) {
+        try {
+            for (Path file : snapshotFiles(this.directory)) {
+                if (sequenceOf(file) < fullSequence) Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // the old files are only wasting space, they don't affect restoring
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the snapshot files in the directory, in the order they were written
+     */
+    private static List<Path> snapshotFiles(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> {
+                        String name = file.getFileName().toString();
+                        return name.endsWith(FULL) || name.endsWith(DELTA);
+                    })
+                    .sorted()
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('.')));
+    }
+}
@@ -1,18 +1,35 @@
 package api.db_mongodb;
 
 import api.BasicCrud;
+import api.BatchOutcome;
+import api.CountingBloomFilter;
+import api.SamplePage;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.ErrorCategory;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
 import model.Sample;
 import model.SampleResult;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class MongoDbRepository implements BasicCrud {
 
@@ -21,6 +38,8 @@ public class MongoDbRepository implements BasicCrud {
     MongoClient mongoClient = new MongoClient("localhost", 27017);
     MongoDatabase dataBase = mongoClient.getDatabase("BasicCrudDb");
 
+    private volatile CountingBloomFilter uidFilter;
+
     public MongoDbRepository() {
         boolean found = false;
         for (String dbName : dataBase.listCollectionNames()) {
@@ -33,6 +52,37 @@ public class MongoDbRepository implements BasicCrud {
             dataBase.createCollection(COLLECTION);
     }
 
+    /**
+     * Builds a {@link CountingBloomFilter} from the {@code _id}s in the collection and keeps it up to date on
+     * every write. Retrieving, updating or deleting a UID the filter has never seen then returns without a
+     * round trip to the server.
+     *
+     * The filter only knows about writes made through this repository, so it must only be enabled if no other
+     * client writes to the collection. Batch deletes racing with other deletes of the same UIDs leave stale
+     * counts behind, which raise the false positive rate over time but never hide a Sample. Calling it again
+     * rebuilds the filter, e.g. after {@link CountingBloomFilter#isOverloaded()}, and must not run
+     * concurrently with writes.
+     *
+     * @param expectedSamples the number of Samples the filter is sized for
+     * @param falsePositiveRate the share of absent UIDs that still have to be looked up on the server
+     */
+    public void enableUidFilter(long expectedSamples, double falsePositiveRate) {
+        MongoCollection<Document> collection = dataBase.getCollection(COLLECTION);
+        CountingBloomFilter filter = new CountingBloomFilter(Math.max(expectedSamples, collection.count()), falsePositiveRate);
+        FindIterable<Document> result = collection.find().projection(Projections.include(MongoDbSample.P_ID));
+        try (MongoCursor<Document> cursor = result.iterator()) {
+            while (cursor.hasNext()) {
+                Object uid = cursor.next().get(MongoDbSample.P_ID);
+                if (uid instanceof String) filter.add((String) uid);
+            }
+        }
+        this.uidFilter = filter;
+    }
+
+    public CountingBloomFilter getUidFilter() {
+        return uidFilter;
+    }
+
     @Override
     public List<Sample> listSamples(SampleResult resultType) {
         MongoCollection<Document> collection = dataBase.getCollection(COLLECTION);
@@ -52,12 +102,60 @@ public class MongoDbRepository implements BasicCrud {
         return this.listSamples(SampleResult.ALL);
     }
 
+    /**
+     * Pages by {@code _id} range: every page is one query for the next {@code pageSize + 1} documents
+     * after the last UID of the previous page, served by the {@code _id} index.
+     */
+    @Override
+    public SamplePage listSamples(SampleResult resultType, int pageSize, String continuationToken) {
+        if (resultType == null) throw new IllegalArgumentException("resultType must not be null.");
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive.");
+        MongoCollection<Document> collection = dataBase.getCollection(COLLECTION);
+
+        List<Bson> filters = new ArrayList<>();
+        if (resultType != SampleResult.ALL)
+            filters.add(Filters.eq(MongoDbSample.P_RESULT, resultType.name()));
+        if (continuationToken != null)
+            filters.add(Filters.gt(MongoDbSample.P_ID, SamplePage.decodeToken(continuationToken, 1)[0]));
+        Bson filter = filters.isEmpty() ? new Document() : Filters.and(filters);
+
+        List<Sample> page = new ArrayList<>(pageSize);
+        boolean hasMore = false;
+        FindIterable<Document> result = collection.find(filter)
+                .sort(Sorts.ascending(MongoDbSample.P_ID))
+                .limit(pageSize + 1);
+        try (MongoCursor<Document> cursor = result.iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                if (page.size() == pageSize) {
+                    hasMore = true;
+                    break;
+                }
+                page.add(MongoDbSample.documentToSample(document));
+            }
+        }
+
+        String nextToken = hasMore ? SamplePage.encodeToken(page.get(page.size() - 1).getUID()) : null;
+        return new SamplePage(page, nextToken);
+    }
+
     @Override
     public boolean insertSample(Sample sample) {
+        if (sample == null) return false;
         MongoCollection<Document> collection = dataBase.getCollection(COLLECTION);
         Document document = MongoDbSample.sampleToDocument(sample);
-        collection.insertOne(document);
-        return true;
+        this.rememberUid(sample.getUID());
+        try {
+            collection.insertOne(document);
+            return true;
+        } catch (MongoWriteException e) {
+            if (e.getError().getCategory() == ErrorCategory.DUPLICATE_KEY) {
+                // the existing document keeps its own count
+                this.forgetUid(sample.getUID());
+                return false;
+            }
+            throw e;
+        }
     }
 
     @Override
@@ -72,23 +170,164 @@ public class MongoDbRepository implements BasicCrud {
 
     @Override
     public boolean updateSample(Sample updatedSample) {
-        return this.insertSample(updatedSample);
+        return this.updateSamples(Collections.singletonList(updatedSample)).get(0) == BatchOutcome.UPDATED;
     }
 
     @Override
     public boolean upsertSample(Sample sample) {
-        return this.insertSample(sample);
+        return this.upsertSamples(Collections.singletonList(sample)).get(0) != BatchOutcome.REJECTED;
     }
 
     @Override
     public boolean deleteSample(Sample sample) {
+        if (sample == null || !this.mightExist(sample.getUID())) return false;
         MongoCollection<Document> collection = dataBase.getCollection(COLLECTION);
-        collection.findOneAndDelete(MongoDbSample.sampleToDocument(sample));
-        return true;
+        Document deleted = collection.findOneAndDelete(MongoDbSample.sampleToDocument(sample));
+        if (deleted != null) this.forgetUid(sample.getUID());
+        return deleted != null;
+    }
+
+    @Override
+    public List<BatchOutcome> updateSamples(List<Sample> updatedSamples) {
+        return this.replaceSamples(updatedSamples, false);
+    }
+
+    @Override
+    public List<BatchOutcome> upsertSamples(List<Sample> samples) {
+        return this.replaceSamples(samples, true);
+    }
+
+    @Override
+    public List<BatchOutcome> deleteSamples(List<Sample> samples) {
+        List<String> uids = new ArrayList<>(samples.size());
+        for (Sample sample : samples) {
+            uids.add(sample == null ? null : sample.getUID());
+        }
+        return this.deleteSamplesByUid(uids);
+    }
+
+    /**
+     * Looks up which of the UIDs exist in one query and deletes those with one {@code bulkWrite}.
+     */
+    @Override
+    public List<BatchOutcome> deleteSamplesByUid(List<String> uids) {
+        MongoCollection<Document> collection = dataBase.getCollection(COLLECTION);
+        Set<String> existing = this.existingUids(collection, uids);
+        List<BatchOutcome> outcomes = new ArrayList<>(uids.size());
+        List<WriteModel<Document>> writes = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+
+        for (String uid : uids) {
+            if (uid == null) {
+                outcomes.add(BatchOutcome.REJECTED);
+            } else if (existing.remove(uid)) {
+                writes.add(new DeleteOneModel<>(Filters.eq(MongoDbSample.P_ID, uid)));
+                deleted.add(uid);
+                outcomes.add(BatchOutcome.DELETED);
+            } else {
+                outcomes.add(BatchOutcome.NOT_FOUND);
+            }
+        }
+
+        if (!writes.isEmpty()) {
+            BulkWriteResult result = collection.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+            // If a concurrent delete got to some of the documents first, it is unknown which ones this call
+            // deleted. Forgetting all of them could take away the count of a Sample that still exists, so
+            // none are forgotten, and the UIDs this call did delete stay in the filter as false positives.
+            if (result.getDeletedCount() == deleted.size()) {
+                for (String uid : deleted) {
+                    this.forgetUid(uid);
+                }
+            }
+        }
+        return outcomes;
     }
 
     @Override
     public Sample retrieve(String uid) {
-        return null;
+        if (uid == null || !this.mightExist(uid)) return null;
+        MongoCollection<Document> collection = dataBase.getCollection(COLLECTION);
+        Document document = collection.find(Filters.eq(MongoDbSample.P_ID, uid)).first();
+        return document == null ? null : MongoDbSample.documentToSample(document);
+    }
+
+    /**
+     * Looks up which of the Samples exist in one query and replaces (or, if {@code insertMissing} is set,
+     * upserts) them with one {@code bulkWrite}.
+     */
+    private List<BatchOutcome> replaceSamples(List<Sample> samples, boolean insertMissing) {
+        MongoCollection<Document> collection = dataBase.getCollection(COLLECTION);
+        List<String> uids = new ArrayList<>(samples.size());
+        for (Sample sample : samples) {
+            if (sample != null) uids.add(sample.getUID());
+        }
+        Set<String> existing = this.existingUids(collection, uids);
+        List<BatchOutcome> outcomes = new ArrayList<>(samples.size());
+        List<WriteModel<Document>> writes = new ArrayList<>();
+        // without insertMissing, a document deleted since the lookup must not be recreated by the replace
+        UpdateOptions options = new UpdateOptions().upsert(insertMissing);
+
+        for (Sample sample : samples) {
+            if (sample == null || sample.getUID() == null || sample.getSampleResult() == SampleResult.ALL) {
+                outcomes.add(BatchOutcome.REJECTED);
+                continue;
+            }
+            boolean exists = existing.contains(sample.getUID());
+            if (!exists && !insertMissing) {
+                outcomes.add(BatchOutcome.NOT_FOUND);
+                continue;
+            }
+            if (!exists) this.rememberUid(sample.getUID());
+            writes.add(new ReplaceOneModel<>(Filters.eq(MongoDbSample.P_ID, sample.getUID()),
+                    MongoDbSample.sampleToDocument(sample), options));
+            // a second occurrence of the same UID in this batch updates the first one
+            outcomes.add(exists ? BatchOutcome.UPDATED : BatchOutcome.INSERTED);
+            existing.add(sample.getUID());
+        }
+
+        if (!writes.isEmpty())
+            collection.bulkWrite(writes, new BulkWriteOptions().ordered(true));
+        return outcomes;
+    }
+
+    private Set<String> existingUids(MongoCollection<Document> collection, List<String> uids) {
+        Set<String> existing = new HashSet<>();
+        List<String> nonNullUids = new ArrayList<>(uids.size());
+        for (String uid : uids) {
+            // UIDs the filter has never seen are not asked for at all
+            if (uid != null && this.mightExist(uid)) nonNullUids.add(uid);
+        }
+        if (nonNullUids.isEmpty()) return existing;
+
+        FindIterable<Document> result = collection.find(Filters.in(MongoDbSample.P_ID, nonNullUids))
+                .projection(Projections.include(MongoDbSample.P_ID));
+        try (MongoCursor<Document> cursor = result.iterator()) {
+            while (cursor.hasNext()) {
+                existing.add(cursor.next().getString(MongoDbSample.P_ID));
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @return false, if the UID filter is enabled and the UID is definitely not in the collection
+     */
+    private boolean mightExist(String uid) {
+        CountingBloomFilter filter = this.uidFilter;
+        return filter == null || uid == null || filter.mightContain(uid);
+    }
+
+    /**
+     * Adds the UID to the filter. This happens before the write, so a concurrent delete can never remove a
+     * UID the filter does not count yet, and a failed write only costs a false positive.
+     */
+    private void rememberUid(String uid) {
+        CountingBloomFilter filter = this.uidFilter;
+        if (filter != null && uid != null) filter.add(uid);
+    }
+
+    private void forgetUid(String uid) {
+        CountingBloomFilter filter = this.uidFilter;
+        if (filter != null && uid != null) filter.remove(uid);
     }
 }
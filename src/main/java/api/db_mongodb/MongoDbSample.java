@@ -4,13 +4,18 @@ import model.Sample;
 import model.SampleResult;
 import org.bson.Document;
 
-public class MongoDbSample extends Sample {
+/**
+ * Maps {@link Sample}s to MongoDB {@link Document}s and back.
+ */
+public final class MongoDbSample {
 
     public static final String P_ID = "_id";
     public static final String P_VALUE = "sampleValue";
     public static final String P_RESULT = "sampleResult";
     public static final String P_MEASUREMENT_DATE = "sampleDate";
 
+    private MongoDbSample() {}
+
     public static Sample documentToSample(Document document) {
         String id = document.getString(P_ID);
         Double value = document.getDouble(P_VALUE);
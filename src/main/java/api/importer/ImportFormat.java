@@ -0,0 +1,20 @@
+package api.importer;
+
+/**
+ * The line-oriented file formats understood by the {@link SampleImporter}.
+ */
+public enum ImportFormat {
+
+    /**
+     * One Sample per line as {@code uid,sampleValue,sampleDate,sampleResult}. The uid column may be
+     * omitted ({@code sampleValue,sampleDate,sampleResult}), in which case a new UID is generated.
+     * A header line starting with {@code uid} or {@code sampleValue} is skipped.
+     */
+    CSV,
+
+    /**
+     * One JSON object per line, in the same shape Jackson writes for {@link model.Sample}.
+     */
+    JSON_LINES
+
+}
@@ -0,0 +1,71 @@
+package api.importer;
+
+/**
+ * An immutable snapshot of the state of a running (or finished) import.
+ */
+public final class ImportProgress {
+
+    private final long totalBytes;
+    private final long bytesProcessed;
+    private final long samplesImported;
+    private final long samplesRejected;
+    private final long failedBatches;
+    private final long elapsedNanos;
+
+    ImportProgress(long totalBytes, long bytesProcessed, long samplesImported,
+                   long samplesRejected, long failedBatches, long elapsedNanos) {
+        this.totalBytes = totalBytes;
+        this.bytesProcessed = bytesProcessed;
+        this.samplesImported = samplesImported;
+        this.samplesRejected = samplesRejected;
+        this.failedBatches = failedBatches;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * @return the number of Samples handed to the target repository
+     */
+    public long getSamplesImported() {
+        return samplesImported;
+    }
+
+    /**
+     * @return the number of lines which could not be parsed or did not pass validation
+     */
+    public long getSamplesRejected() {
+        return samplesRejected;
+    }
+
+    /**
+     * @return the number of batches for which {@link api.BasicCrud#insertSamples(java.util.List)} returned false
+     */
+    public long getFailedBatches() {
+        return failedBatches;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public double getSamplesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : samplesImported * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : (bytesProcessed / (1024.0 * 1024.0)) * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    public String toString() {
+        return String.format("%d/%d bytes, %d imported, %d rejected, %d failed batches, %.0f samples/s, %.1f MB/s",
+                bytesProcessed, totalBytes, samplesImported, samplesRejected, failedBatches,
+                getSamplesPerSecond(), getMegabytesPerSecond());
+    }
+}
@@ -0,0 +1,12 @@
+package api.importer;
+
+/**
+ * Receives progress updates from the {@link SampleImporter}. It is called on the thread that writes
+ * into the target repository after every batch, so implementations should return quickly.
+ */
+@FunctionalInterface
+public interface ImportProgressListener {
+
+    void onProgress(ImportProgress progress);
+
+}
@@ -0,0 +1,334 @@
+package api.importer;
+
+import api.BasicCrud;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import model.Sample;
+import model.SampleResult;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams Samples from a CSV or JSON-lines file into any {@link BasicCrud} implementation.
+ *
+ * The file is read through a {@link FileChannel} in chunks which are cut at line boundaries. Every chunk
+ * is parsed on a {@link ForkJoinPool}, so parsing runs on all cores while the file is still being read.
+ * The parsed Samples are written into the target repository by the calling thread only, which is why the
+ * target does not have to be thread-safe. Chunks are written in file order, whichever chunk finishes parsing
+ * first, so the first of several lines with the same UID is always the one that is inserted. At most
+ * {@code maxPendingChunks} chunks are read ahead of the writer; once that limit is reached, reading blocks
+ * until the target repository has caught up.
+ *
+ * Lines which cannot be parsed, have no UID or carry {@link SampleResult#ALL} (or no result at all) are
+ * rejected and counted in the {@link ImportProgress}.
+ */
+public class SampleImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    public static final int DEFAULT_MAX_PENDING_CHUNKS = 16;
+
+    private static final ObjectReader SAMPLE_READER = new ObjectMapper().readerFor(Sample.class);
+
+    /** The column names of a CSV header, which may leave out the UID. */
+    private static final List<String> CSV_HEADER = List.of("uid", "sampleValue", "sampleDate", "sampleResult");
+
+    /** Marker returned by the CSV parser for a header in the first line of the file. */
+    private static final Sample HEADER = new Sample(null, 0.0, null, null);
+
+    private final BasicCrud target;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int batchSize;
+    private final int maxPendingChunks;
+
+    public SampleImporter(BasicCrud target) {
+        this(target, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE, DEFAULT_BATCH_SIZE, DEFAULT_MAX_PENDING_CHUNKS);
+    }
+
+    /**
+     * @param target the repository the Samples are inserted into
+     * @param pool the pool the chunks are parsed on
+     * @param chunkSize the number of bytes read from the file per chunk. Lines longer than this are still
+     *                  handled, the chunk simply grows.
+     * @param batchSize the maximum number of Samples per {@link BasicCrud#insertSamples(List)} call
+     * @param maxPendingChunks the number of chunks which may be read or parsed ahead of the writer
+     */
+    public SampleImporter(BasicCrud target, ForkJoinPool pool, int chunkSize, int batchSize, int maxPendingChunks) {
+        if (chunkSize < 1 || batchSize < 1 || maxPendingChunks < 1)
+            throw new IllegalArgumentException("chunkSize, batchSize and maxPendingChunks must be positive.");
+        this.target = target;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.batchSize = batchSize;
+        this.maxPendingChunks = maxPendingChunks;
+    }
+
+    public ImportProgress importFile(Path file, ImportFormat format) {
+        return this.importFile(file, format, progress -> { });
+    }
+
+    /**
+     * Imports the given file into the target repository and blocks until every line has been processed.
+     *
+     * @param file the CSV or JSON-lines file
+     * @param format the format of the file
+     * @param listener is notified after every batch written into the target repository
+     * @return the final progress of the import
+     */
+    public ImportProgress importFile(Path file, ImportFormat format, ImportProgressListener listener) {
+        long start = System.nanoTime();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long totalBytes = channel.size();
+            LinkedBlockingQueue<ParsedChunk> parsedChunks = new LinkedBlockingQueue<>();
+            // chunks which finished parsing before a chunk in front of them, by sequence number
+            Map<Long, ParsedChunk> earlyChunks = new HashMap<>();
+            Semaphore pendingChunks = new Semaphore(this.maxPendingChunks);
+            ChunkReader reader = new ChunkReader(channel, format, parsedChunks, pendingChunks);
+
+            Thread readerThread = new Thread(reader, "sample-import-reader");
+            readerThread.setDaemon(true);
+            readerThread.start();
+
+            long bytesProcessed = 0;
+            long imported = 0;
+            long rejected = 0;
+            long failedBatches = 0;
+            long chunksConsumed = 0;
+            long chunksTotal = -1;
+
+            try {
+                while (chunksTotal != chunksConsumed) {
+                    ParsedChunk chunk = parsedChunks.take();
+                    if (chunk.failure != null)
+                        throw chunk.failure;
+                    if (chunk.endOfFile) {
+                        chunksTotal = chunk.chunkCount;
+                        continue;
+                    }
+                    earlyChunks.put(chunk.sequence, chunk);
+
+                    // the sequence number of the next chunk to write is the number of chunks written so far
+                    while ((chunk = earlyChunks.remove(chunksConsumed)) != null) {
+                        List<Sample> samples = chunk.samples;
+                        rejected += chunk.rejected;
+                        for (int from = 0; from < samples.size(); from += this.batchSize) {
+                            List<Sample> batch = samples.subList(from, Math.min(samples.size(), from + this.batchSize));
+                            if (!this.target.insertSamples(batch))
+                                failedBatches++;
+                            imported += batch.size();
+                            listener.onProgress(new ImportProgress(totalBytes, bytesProcessed, imported, rejected,
+                                    failedBatches, System.nanoTime() - start));
+                        }
+                        bytesProcessed += chunk.bytes;
+                        chunksConsumed++;
+                        pendingChunks.release();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Import of " + file + " was interrupted.", e);
+            } finally {
+                // releases a reader blocked on the semaphore if the target repository failed
+                readerThread.interrupt();
+            }
+
+            ImportProgress result = new ImportProgress(totalBytes, bytesProcessed, imported, rejected,
+                    failedBatches, System.nanoTime() - start);
+            listener.onProgress(result);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(new IOException("Could not import Samples from " + file, e));
+        }
+    }
+
+    /**
+     * Parses one chunk of complete lines. Runs on the fork-join pool.
+     *
+     * @param sequence the position of the chunk in the file, only the first line of chunk 0 may be a CSV header
+     */
+    static ParsedChunk parseChunk(byte[] data, int length, ImportFormat format, long sequence) {
+        List<Sample> samples = new ArrayList<>();
+        int rejected = 0;
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && data[lineEnd] != '\n') lineEnd++;
+
+            int contentEnd = lineEnd;
+            if (contentEnd > lineStart && data[contentEnd - 1] == '\r') contentEnd--;
+
+            if (contentEnd > lineStart) {
+                Sample sample = format == ImportFormat.CSV
+                        ? parseCsvLine(data, lineStart, contentEnd, sequence == 0 && lineStart == 0)
+                        : parseJsonLine(data, lineStart, contentEnd);
+                // a header line is neither imported nor rejected
+                if (isValid(sample))
+                    samples.add(sample);
+                else if (sample != HEADER)
+                    rejected++;
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new ParsedChunk(sequence, samples, rejected, length);
+    }
+
+    private static Sample parseCsvLine(byte[] data, int from, int to, boolean firstLine) {
+        String line = new String(data, from, to - from, StandardCharsets.UTF_8);
+        String[] columns = line.split(",", -1);
+        if (firstLine && isHeader(columns)) return HEADER;
+
+        try {
+            if (columns.length == 4)
+                return new Sample(columns[0].trim(), Double.parseDouble(columns[1].trim()),
+                        columns[2].trim(), SampleResult.valueOf(columns[3].trim()));
+            if (columns.length == 3)
+                return new Sample(Double.parseDouble(columns[0].trim()),
+                        columns[1].trim(), SampleResult.valueOf(columns[2].trim()));
+        } catch (IllegalArgumentException e) {
+            // covers NumberFormatException and unknown SampleResult names
+        }
+        return null;
+    }
+
+    private static boolean isHeader(String[] columns) {
+        List<String> names = new ArrayList<>(columns.length);
+        for (String column : columns) names.add(column.trim());
+        return names.equals(CSV_HEADER) || names.equals(CSV_HEADER.subList(1, CSV_HEADER.size()));
+    }
+
+    private static Sample parseJsonLine(byte[] data, int from, int to) {
+        try {
+            return SAMPLE_READER.readValue(data, from, to - from);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean isValid(Sample sample) {
+        return sample != null
+                && sample.getUID() != null && !sample.getUID().isEmpty()
+                && sample.getSampleResult() != null
+                && sample.getSampleResult() != SampleResult.ALL;
+    }
+
+    /**
+     * Reads the file in chunks which end on a line break and hands them to the fork-join pool.
+     */
+    private class ChunkReader implements Runnable {
+
+        private final FileChannel channel;
+        private final ImportFormat format;
+        private final LinkedBlockingQueue<ParsedChunk> parsedChunks;
+        private final Semaphore pendingChunks;
+
+        ChunkReader(FileChannel channel, ImportFormat format,
+                    LinkedBlockingQueue<ParsedChunk> parsedChunks, Semaphore pendingChunks) {
+            this.channel = channel;
+            this.format = format;
+            this.parsedChunks = parsedChunks;
+            this.pendingChunks = pendingChunks;
+        }
+
+        @Override
+        public void run() {
+            long chunkCount = 0;
+            try {
+                byte[] carry = new byte[0];
+                boolean endOfFile = false;
+                while (!endOfFile) {
+                    ByteBuffer buffer = ByteBuffer.allocate(Math.max(chunkSize, carry.length * 2));
+                    buffer.put(carry);
+                    while (buffer.hasRemaining()) {
+                        if (this.channel.read(buffer) < 0) {
+                            endOfFile = true;
+                            break;
+                        }
+                    }
+
+                    byte[] data = buffer.array();
+                    int filled = buffer.position();
+                    int chunkLength = filled;
+                    if (!endOfFile) {
+                        while (chunkLength > 0 && data[chunkLength - 1] != '\n') chunkLength--;
+                        if (chunkLength == 0) {
+                            // a single line longer than the buffer, read on with a bigger one
+                            carry = Arrays.copyOf(data, filled);
+                            continue;
+                        }
+                    }
+                    carry = Arrays.copyOfRange(data, chunkLength, filled);
+                    if (chunkLength == 0) continue;
+
+                    this.pendingChunks.acquire();
+                    final int length = chunkLength;
+                    final long sequence = chunkCount;
+                    pool.execute(() -> {
+                        ParsedChunk parsed;
+                        try {
+                            parsed = parseChunk(data, length, this.format, sequence);
+                        } catch (RuntimeException e) {
+                            parsed = ParsedChunk.failed(new IOException("Could not parse chunk", e));
+                        }
+                        this.parsedChunks.add(parsed);
+                    });
+                    chunkCount++;
+                }
+                this.parsedChunks.add(ParsedChunk.endOfFile(chunkCount));
+            } catch (IOException e) {
+                this.parsedChunks.add(ParsedChunk.failed(e));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static final class ParsedChunk {
+
+        final long sequence;
+        final List<Sample> samples;
+        final int rejected;
+        final long bytes;
+        final boolean endOfFile;
+        final long chunkCount;
+        final IOException failure;
+
+        private ParsedChunk(long sequence, List<Sample> samples, int rejected, long bytes,
+                            boolean endOfFile, long chunkCount, IOException failure) {
+            this.sequence = sequence;
+            this.samples = samples;
+            this.rejected = rejected;
+            this.bytes = bytes;
+            this.endOfFile = endOfFile;
+            this.chunkCount = chunkCount;
+            this.failure = failure;
+        }
+
+        ParsedChunk(long sequence, List<Sample> samples, int rejected, long bytes) {
+            this(sequence, samples, rejected, bytes, false, 0, null);
+        }
+
+        static ParsedChunk endOfFile(long chunkCount) {
+            return new ParsedChunk(-1, null, 0, 0, true, chunkCount, null);
+        }
+
+        static ParsedChunk failed(IOException failure) {
+            return new ParsedChunk(-1, null, 0, 0, false, 0, failure);
+        }
+    }
+}
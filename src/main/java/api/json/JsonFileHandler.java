@@ -1,10 +1,17 @@
 package api.json;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class handles the File I/O for the JsonFileRepository Implementation of {@link api.BasicCrud} API.
@@ -13,6 +20,10 @@ public class JsonFileHandler {
 
     private final Path pathToTargetFile;
 
+    /** Tells the files of different handlers apart, {@link #writeCount} is only unique per handler. */
+    private final long handlerId = ThreadLocalRandom.current().nextLong();
+    private final AtomicLong writeCount = new AtomicLong();
+
     public JsonFileHandler(Path pathToFile) {
 
         if(Files.exists(pathToFile))
@@ -43,6 +54,8 @@ public class JsonFileHandler {
 
     public void save(String json) {
         try {
+            // counted before the write, so positions read while the file changes are never valid afterwards
+            this.writeCount.incrementAndGet();
             Files.write(this.pathToTargetFile, json.getBytes(StandardCharsets.UTF_8));
         } catch(IOException ex) {
             ex.printStackTrace();
@@ -64,4 +77,34 @@ public class JsonFileHandler {
         return content;
     }
 
+    /**
+     * Opens the repository file for streaming, starting at the given byte position.
+     * The caller has to close the stream.
+     *
+     * @param position the byte offset to start reading at
+     * @return a buffered stream of the file content from the position on
+     */
+    public InputStream openStream(long position) {
+        try {
+            FileChannel channel = FileChannel.open(this.pathToTargetFile, StandardOpenOption.READ);
+            channel.position(position);
+            return new BufferedInputStream(Channels.newInputStream(channel));
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not read JSON repository!"));
+        }
+    }
+
+    /**
+     * Identifies the current content of the repository file by the number of times this handler wrote it.
+     * Byte positions obtained while reading the file are only valid as long as the fingerprint doesn't change.
+     * Unlike the size and modification time of the file, the counter changes with every write, also if a
+     * write keeps the size and happens within the resolution of the file system clock.
+     *
+     * @return the fingerprint of the file
+     */
+    public String fingerprint() {
+        return Long.toHexString(this.handlerId) + "#" + this.writeCount.get();
+    }
+
 }
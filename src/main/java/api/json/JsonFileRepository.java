@@ -1,15 +1,30 @@
 package api.json;
 
 import api.BasicCrud;
+import api.BatchOutcome;
+import api.CountingBloomFilter;
+import api.SamplePage;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import model.Sample;
 import model.SampleResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This API implementation initiates a File {@code json-file-repository.json} in your home directory
@@ -26,12 +41,44 @@ import java.util.List;
  */
 public class JsonFileRepository implements BasicCrud {
 
+    private static final byte[] ARRAY_START = "[".getBytes(StandardCharsets.UTF_8);
+
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final JsonFileHandler fileHandler;
+    private CountingBloomFilter uidFilter;
 
     public JsonFileRepository() {
-        this.fileHandler = new JsonFileHandler(
-                Paths.get(System.getProperty("user.home") + "/json-file-repository.json"));
+        this(Paths.get(System.getProperty("user.home") + "/json-file-repository.json"));
+    }
+
+    /**
+     * @param pathToFile the repository file, which must not exist yet.
+     */
+    public JsonFileRepository(Path pathToFile) {
+        this.fileHandler = new JsonFileHandler(pathToFile);
+    }
+
+    /**
+     * Builds a {@link CountingBloomFilter} from the UIDs in the repository file and keeps it up to date on
+     * every write. Retrieving, updating or deleting a UID the filter has never seen then returns without
+     * reading the file, and inserts skip the duplicate scan for such UIDs.
+     *
+     * Calling it again rebuilds the filter, e.g. after {@link CountingBloomFilter#isOverloaded()}.
+     *
+     * @param expectedSamples the number of Samples the filter is sized for
+     * @param falsePositiveRate the share of absent UIDs that still have to be looked up in the file
+     */
+    public void enableUidFilter(long expectedSamples, double falsePositiveRate) {
+        List<Sample> samples = this.loadSamples();
+        CountingBloomFilter filter = new CountingBloomFilter(Math.max(expectedSamples, samples.size()), falsePositiveRate);
+        for (Sample sample : samples) {
+            if (sample.getUID() != null) filter.add(sample.getUID());
+        }
+        this.uidFilter = filter;
+    }
+
+    public CountingBloomFilter getUidFilter() {
+        return uidFilter;
     }
 
     @Override
@@ -44,11 +91,95 @@ public class JsonFileRepository implements BasicCrud {
         return this.loadSamples();
     }
 
+    /**
+     * Streams the repository file instead of loading it. The continuation token holds the byte position of
+     * the next Sample, so the next page starts reading right there. If the file was written in between, the
+     * position is no longer valid and the listing resumes after the last UID of the previous page instead,
+     * which requires scanning the file up to that Sample. If that Sample was deleted as well, the listing
+     * resumes at its former index in the array, so Samples moved by other writes may be skipped or listed
+     * twice.
+     */
+    @Override
+    public SamplePage listSamples(SampleResult resultType, int pageSize, String continuationToken) {
+        if (resultType == null) throw new IllegalArgumentException("resultType must not be null.");
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive.");
+
+        String fingerprint = this.fileHandler.fingerprint();
+        if (continuationToken == null)
+            return this.readPage(resultType, pageSize, fingerprint, 0, 0, null, 0);
+
+        String[] token = SamplePage.decodeToken(continuationToken, 4);
+        long nextOrdinal = Long.parseLong(token[3]);
+        if (token[1].equals(fingerprint))
+            return this.readPage(resultType, pageSize, fingerprint, Long.parseLong(token[0]), nextOrdinal, null, 0);
+        SamplePage page = this.readPage(resultType, pageSize, fingerprint, 0, 0, token[2], 0);
+        // without the last Sample of the previous page, the next one has moved down into its place at the latest
+        return page != null ? page : this.readPage(resultType, pageSize, fingerprint, 0, 0, null, nextOrdinal - 1);
+    }
+
+    /**
+     * Reads one page from the repository file.
+     *
+     * @param position the byte position to start reading at, 0 or a position read under the same fingerprint
+     * @param ordinal the index in the array of the Sample at that position
+     * @param resumeAfterUid if set, only the Samples after the one with this UID are listed
+     * @param resumeAtOrdinal only the Samples from this index in the array on are listed
+     * @return the page, or {@code null} if no Sample has the UID to resume after
+     */
+    private SamplePage readPage(SampleResult resultType, int pageSize, String fingerprint, long position,
+                                long ordinal, String resumeAfterUid, long resumeAtOrdinal) {
+        // when resuming in the middle of the array, a '[' is put in front so the parser sees a valid array
+        InputStream stream = position == 0
+                ? this.fileHandler.openStream(0)
+                : new SequenceInputStream(new ByteArrayInputStream(ARRAY_START), this.fileHandler.openStream(position));
+        long base = position == 0 ? 0 : position - ARRAY_START.length;
+
+        List<Sample> page = new ArrayList<>(pageSize);
+        long nextPosition = -1;
+        long nextOrdinal = -1;
+        try (JsonParser parser = this.objectMapper.getFactory().createParser(stream)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY)
+                throw new IOException("Json-Repository does not contain an array.");
+
+            for (long current = ordinal; parser.nextToken() == JsonToken.START_OBJECT; current++) {
+                long objectStart = base + parser.getTokenLocation().getByteOffset();
+                Sample sample = this.objectMapper.readValue(parser, Sample.class);
+                if (resumeAfterUid != null) {
+                    if (resumeAfterUid.equals(sample.getUID())) resumeAfterUid = null;
+                    continue;
+                }
+                if (current < resumeAtOrdinal)
+                    continue;
+                if (resultType != SampleResult.ALL && sample.getSampleResult() != resultType)
+                    continue;
+                if (page.size() == pageSize) {
+                    nextPosition = objectStart;
+                    nextOrdinal = current;
+                    break;
+                }
+                page.add(sample);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not read JSON repository!"));
+        }
+
+        if (resumeAfterUid != null)
+            return null;
+        String nextToken = nextPosition < 0 ? null : SamplePage.encodeToken(String.valueOf(nextPosition),
+                fingerprint, page.get(page.size() - 1).getUID(), String.valueOf(nextOrdinal));
+        return new SamplePage(page, nextToken);
+    }
+
     @Override
     public boolean insertSample(Sample sample) {
         if(sample == null) return false;
 
         List<Sample> list = this.listSamples();
+        // a UID the filter has never seen cannot be a duplicate, so the scan is skipped
+        if (sample.getUID() != null && this.mightExist(sample.getUID()) && indexByUid(list).containsKey(sample.getUID()))
+            return false;
+        this.rememberUid(sample.getUID());
         list.add(sample);
         try {
             // It is not always optimal to save the list with every insert.
@@ -62,48 +193,147 @@ public class JsonFileRepository implements BasicCrud {
         return false;
     }
 
+    /**
+     * Inserts all Samples whose UID is not taken yet, by the file or by an earlier Sample of the batch, in a
+     * single load/save cycle. Like {@link #insertSample(Sample)}, the UID index is only built once the filter
+     * can't rule out a duplicate.
+     *
+     * @return true, if all Samples were added
+     */
     @Override
     public boolean insertSamples(List<Sample> samples) {
         List<Sample> sampleList = this.loadSamples();
-        sampleList.addAll(samples);
-        return this.saveSamples(sampleList);
-    }
+        Map<String, Integer> indexByUid = null;
+        boolean success = true;
+        boolean modified = false;
 
-    @Override
-    public boolean updateSample(Sample updatedSample) {
-        boolean success = false;
-        List<Sample> samples = this.loadSamples();
-        // For this very basic example we assume that there can be no copies
-        // in this list. However, a Set might be a better suited collection because
-        // a Set doesn't allow copies in the first place.
-        for(Sample s : samples) {
-            if(s.getUID().equals(updatedSample.getUID())) {
-                s.setSampleResult(updatedSample.getSampleResult());
-                s.setSampleValue(updatedSample.getSampleValue());
-                success = true;
-                break; // b/c of our assumption about unique-ness.
+        for (Sample sample : samples) {
+            if (sample == null) {
+                success = false;
+                continue;
             }
+            String uid = sample.getUID();
+            if (uid != null && this.mightExist(uid)) {
+                if (indexByUid == null) indexByUid = indexByUid(sampleList);
+                if (indexByUid.containsKey(uid)) {
+                    success = false;
+                    continue;
+                }
+            }
+            this.rememberUid(uid);
+            if (indexByUid != null) indexByUid.put(uid, sampleList.size());
+            sampleList.add(sample);
+            modified = true;
         }
-        this.saveSamples(samples);
+
+        if (modified && !this.saveSamples(sampleList))
+            return false;
         return success;
     }
 
+    @Override
+    public boolean updateSample(Sample updatedSample) {
+        return this.updateSamples(Collections.singletonList(updatedSample)).get(0) == BatchOutcome.UPDATED;
+    }
+
     @Override
     public boolean upsertSample(Sample sample) {
-        throw new UnsupportedOperationException("Upserting not implemented yet.");
+        return this.upsertSamples(Collections.singletonList(sample)).get(0) != BatchOutcome.REJECTED;
     }
 
     @Override
     public boolean deleteSample(Sample sample) {
+        if (sample == null || !this.mightExist(sample.getUID())) return false;
+
         List<Sample> samples = this.loadSamples();
         boolean success = samples.remove(sample);
-        this.saveSamples(samples);
+        if (this.saveSamples(samples) && success)
+            this.forgetUid(sample.getUID());
         return success;
     }
 
+    /**
+     * Loads the repository file once, replaces all Samples with matching UIDs and saves the file once.
+     */
+    @Override
+    public List<BatchOutcome> updateSamples(List<Sample> updatedSamples) {
+        return this.applyBatch(updatedSamples, false);
+    }
+
+    /**
+     * Loads the repository file once, replaces or appends all Samples and saves the file once.
+     */
+    @Override
+    public List<BatchOutcome> upsertSamples(List<Sample> samples) {
+        return this.applyBatch(samples, true);
+    }
+
+    @Override
+    public List<BatchOutcome> deleteSamples(List<Sample> samples) {
+        List<String> uids = new ArrayList<>(samples.size());
+        for (Sample sample : samples) {
+            uids.add(sample == null ? null : sample.getUID());
+        }
+        return this.deleteSamplesByUid(uids);
+    }
+
+    /**
+     * Loads the repository file once, removes all Samples with matching UIDs and saves the file once.
+     */
+    @Override
+    public List<BatchOutcome> deleteSamplesByUid(List<String> uids) {
+        List<BatchOutcome> outcomes = new ArrayList<>(uids.size());
+        List<Sample> samples = null;
+        Map<String, Integer> indexByUid = null;
+        boolean[] removed = null;
+        List<String> deleted = new ArrayList<>();
+
+        for (String uid : uids) {
+            if (uid == null) {
+                outcomes.add(BatchOutcome.REJECTED);
+                continue;
+            }
+            if (!this.mightExist(uid)) {
+                outcomes.add(BatchOutcome.NOT_FOUND);
+                continue;
+            }
+            // the file is only read once a UID may actually be in it
+            if (samples == null) {
+                samples = this.loadSamples();
+                indexByUid = indexByUid(samples);
+                removed = new boolean[samples.size()];
+            }
+            Integer index = indexByUid.remove(uid);
+            if (index == null) {
+                outcomes.add(BatchOutcome.NOT_FOUND);
+            } else {
+                removed[index] = true;
+                deleted.add(uid);
+                outcomes.add(BatchOutcome.DELETED);
+            }
+        }
+
+        if (!deleted.isEmpty()) {
+            List<Sample> remaining = new ArrayList<>(samples.size());
+            for (int i = 0; i < samples.size(); i++) {
+                if (!removed[i]) remaining.add(samples.get(i));
+            }
+            if (this.saveSamples(remaining)) {
+                for (String uid : deleted) {
+                    this.forgetUid(uid);
+                }
+            }
+        }
+        return outcomes;
+    }
+
     @Override
     public Sample retrieve(String uid) {
-        throw new UnsupportedOperationException("Upserting not implemented yet.");
+        if (uid == null || !this.mightExist(uid)) return null;
+        for (Sample sample : this.loadSamples()) {
+            if (uid.equals(sample.getUID())) return sample;
+        }
+        return null;
     }
 
     protected void close() {
@@ -128,6 +358,76 @@ public class JsonFileRepository implements BasicCrud {
         return listOfSamples;
     }
 
+    /**
+     * Applies a batch of updates (and inserts, if {@code insertMissing} is set) in a single load/save cycle.
+     */
+    private List<BatchOutcome> applyBatch(List<Sample> batch, boolean insertMissing) {
+        List<BatchOutcome> outcomes = new ArrayList<>(batch.size());
+        List<Sample> samples = null;
+        Map<String, Integer> indexByUid = null;
+        boolean modified = false;
+
+        for (Sample sample : batch) {
+            if (sample == null || sample.getUID() == null || sample.getSampleResult() == SampleResult.ALL) {
+                outcomes.add(BatchOutcome.REJECTED);
+                continue;
+            }
+            if (!insertMissing && !this.mightExist(sample.getUID())) {
+                outcomes.add(BatchOutcome.NOT_FOUND);
+                continue;
+            }
+            if (samples == null) {
+                samples = new ArrayList<>(this.loadSamples());
+                indexByUid = indexByUid(samples);
+            }
+            Integer index = indexByUid.get(sample.getUID());
+            if (index != null) {
+                samples.set(index, sample);
+                outcomes.add(BatchOutcome.UPDATED);
+                modified = true;
+            } else if (insertMissing) {
+                this.rememberUid(sample.getUID());
+                indexByUid.put(sample.getUID(), samples.size());
+                samples.add(sample);
+                outcomes.add(BatchOutcome.INSERTED);
+                modified = true;
+            } else {
+                outcomes.add(BatchOutcome.NOT_FOUND);
+            }
+        }
+
+        if (modified)
+            this.saveSamples(samples);
+        return outcomes;
+    }
+
+    private static Map<String, Integer> indexByUid(List<Sample> samples) {
+        Map<String, Integer> indexByUid = new HashMap<>(samples.size() * 2);
+        for (int i = 0; i < samples.size(); i++) {
+            indexByUid.put(samples.get(i).getUID(), i);
+        }
+        return indexByUid;
+    }
+
+    /**
+     * @return false, if the UID filter is enabled and the UID is definitely not in the repository file
+     */
+    private boolean mightExist(String uid) {
+        return this.uidFilter == null || uid == null || this.uidFilter.mightContain(uid);
+    }
+
+    /**
+     * Adds the UID to the filter. This happens before the write, because a failed write only costs a
+     * false positive, while a UID missing from the filter would hide an existing Sample.
+     */
+    private void rememberUid(String uid) {
+        if (this.uidFilter != null && uid != null) this.uidFilter.add(uid);
+    }
+
+    private void forgetUid(String uid) {
+        if (this.uidFilter != null && uid != null) this.uidFilter.remove(uid);
+    }
+
     /**
      * Transforms the List of Sample objects into a JSON String and asks the {@link JsonFileHandler}
      * to write it to the file on disk.
@@ -0,0 +1,90 @@
+package api.segment;
+
+import model.SampleResult;
+
+import java.util.Arrays;
+
+/**
+ * The index entry of one block of a {@link SegmentFile}: where the block lives in the file, which UIDs it
+ * covers and how many Samples of each {@link SampleResult} it holds. Lookups use it to decide which blocks
+ * to decompress at all.
+ */
+public final class SegmentBlock {
+
+    private final long offset;
+    private final int compressedLength;
+    private final int uncompressedLength;
+    private final int checksum;
+    private final String firstUid;
+    private final String lastUid;
+    private final int[] resultCounts;
+
+    SegmentBlock(long offset, int compressedLength, int uncompressedLength, int checksum,
+                 String firstUid, String lastUid, int[] resultCounts) {
+        this.offset = offset;
+        this.compressedLength = compressedLength;
+        this.uncompressedLength = uncompressedLength;
+        this.checksum = checksum;
+        this.firstUid = firstUid;
+        this.lastUid = lastUid;
+        this.resultCounts = resultCounts;
+    }
+
+    /**
+     * @return a copy of this entry for the same block bytes at another position in the file
+     */
+    SegmentBlock movedTo(long newOffset) {
+        return new SegmentBlock(newOffset, compressedLength, uncompressedLength, checksum, firstUid, lastUid, resultCounts);
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public int getCompressedLength() {
+        return compressedLength;
+    }
+
+    public int getUncompressedLength() {
+        return uncompressedLength;
+    }
+
+    /**
+     * @return the CRC32 of the compressed block bytes
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+
+    public String getFirstUid() {
+        return firstUid;
+    }
+
+    public String getLastUid() {
+        return lastUid;
+    }
+
+    /**
+     * @return the number of Samples in the block with the given result, {@link SampleResult#ALL} counts all of them
+     */
+    public int getCount(SampleResult resultType) {
+        return resultCounts[resultType.ordinal()];
+    }
+
+    int[] resultCounts() {
+        return resultCounts;
+    }
+
+    /**
+     * @return true, if the UID falls into the UID range of this block
+     */
+    public boolean covers(String uid) {
+        return firstUid.compareTo(uid) <= 0 && lastUid.compareTo(uid) >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentBlock [" + firstUid + " .. " + lastUid + "] " + Arrays.toString(resultCounts)
+                + " " + compressedLength + "/" + uncompressedLength + " bytes @" + offset;
+    }
+}
@@ -0,0 +1,31 @@
+package api.segment;
+
+import java.util.zip.Deflater;
+
+/**
+ * The Deflate level blocks of a {@link SegmentFile} are compressed with. Blocks are always decompressed
+ * the same way, so the level can be changed between writes; it only applies to blocks written from then on.
+ */
+public enum SegmentCompression {
+
+    /** Stores the blocks as they are, for data that doesn't compress. */
+    NONE(Deflater.NO_COMPRESSION),
+
+    /** The fastest level, which already removes most of the repetition between Samples. */
+    FAST(Deflater.BEST_SPEED),
+
+    DEFAULT(Deflater.DEFAULT_COMPRESSION),
+
+    /** The smallest files, at several times the CPU cost of {@link #FAST} per write. */
+    SMALLEST(Deflater.BEST_COMPRESSION);
+
+    private final int level;
+
+    SegmentCompression(int level) {
+        this.level = level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+}
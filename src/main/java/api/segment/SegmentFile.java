@@ -0,0 +1,317 @@
+package api.segment;
+
+import model.Sample;
+import model.SampleResult;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class handles the File I/O for the {@link SegmentFileRepository}.
+ *
+ * A segment file holds Samples sorted by UID, grouped into blocks that are Deflate-compressed independently
+ * of each other. The block index at the end of the file records the position, UID range and
+ * {@link SampleResult} counts of every block and is kept in memory, so a read only decompresses the
+ * blocks it needs. The layout is
+ * <pre>
+ * header:  int magic, int version
+ * blocks:  compressed block bytes, one block after the other
+ * index:   int blockCount, per block: long offset, int compressedLength, int uncompressedLength,
+ *          int crc32, UTF firstUid, UTF lastUid, int resultCount, int[resultCount] counts
+ * trailer: long indexOffset, int magic
+ * </pre>
+ * Within a block every Sample is stored as UTF uid, double value, boolean hasDate (+ UTF date) and byte
+ * result ordinal (-1 for none).
+ *
+ * Writes never modify the file in place. {@link #rewrite} writes a new file next to it, copying the
+ * compressed bytes of unchanged blocks as they are, and moves it over the old one.
+ */
+public class SegmentFile {
+
+    private static final int MAGIC = 0x42435347; // "BCSG"
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 8;
+    private static final int TRAILER_LENGTH = 12;
+
+    private final Path pathToTargetFile;
+    private List<SegmentBlock> blocks;
+
+    /**
+     * Opens the segment file, or creates an empty one if it doesn't exist yet.
+     */
+    public SegmentFile(Path pathToFile) {
+        this.pathToTargetFile = pathToFile;
+        try {
+            if (Files.exists(pathToFile)) {
+                this.blocks = readIndex(pathToFile);
+            } else {
+                this.blocks = Collections.emptyList();
+                this.rewrite(Collections.emptySortedMap(), SegmentCompression.NONE, 1);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not open segment file at " + pathToFile.toString()));
+        }
+    }
+
+    /**
+     * @return the index of all blocks, in UID order
+     */
+    public List<SegmentBlock> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Reads and decompresses a single block.
+     *
+     * @param index the position of the block in {@link #getBlocks()}
+     * @return the Samples of the block, sorted by UID
+     */
+    public List<Sample> readBlock(int index) {
+        SegmentBlock block = this.blocks.get(index);
+        try (FileChannel channel = FileChannel.open(this.pathToTargetFile, StandardOpenOption.READ)) {
+            return decode(block, readFully(channel, block.getOffset(), block.getCompressedLength()));
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not read segment file!"));
+        }
+    }
+
+    /**
+     * Replaces some blocks and keeps all others. Every replaced block is split into blocks of at most
+     * {@code blockSize} Samples, or dropped if its list is empty. A key equal to the number of blocks adds
+     * Samples behind the last block.
+     *
+     * @param replacedBlocks the new content of the replaced blocks by block index, each sorted by UID
+     * @param compression the compression for the newly written blocks
+     * @param blockSize the maximum number of Samples per newly written block
+     */
+    public void rewrite(SortedMap<Integer, List<Sample>> replacedBlocks, SegmentCompression compression, int blockSize) {
+        Path tempFile = this.pathToTargetFile.resolveSibling(this.pathToTargetFile.getFileName() + ".tmp");
+        List<SegmentBlock> newBlocks = new ArrayList<>(this.blocks.size() + replacedBlocks.size());
+        try (FileChannel source = Files.exists(this.pathToTargetFile)
+                     ? FileChannel.open(this.pathToTargetFile, StandardOpenOption.READ) : null;
+             OutputStream file = Files.newOutputStream(tempFile);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            long position = HEADER_LENGTH;
+            int blockCount = Math.max(this.blocks.size(), replacedBlocks.isEmpty() ? 0 : replacedBlocks.lastKey() + 1);
+            for (int i = 0; i < blockCount; i++) {
+                List<Sample> replacement = replacedBlocks.get(i);
+                if (replacement == null) {
+                    // unchanged blocks are copied without decompressing them
+                    SegmentBlock block = this.blocks.get(i);
+                    out.write(readFully(source, block.getOffset(), block.getCompressedLength()));
+                    newBlocks.add(block.movedTo(position));
+                    position += block.getCompressedLength();
+                    continue;
+                }
+                int pieces = (replacement.size() + blockSize - 1) / blockSize;
+                for (int piece = 0; piece < pieces; piece++) {
+                    // splits evenly, so a block that just overflowed doesn't leave a tiny remainder
+                    List<Sample> samples = replacement.subList(
+                            (int) ((long) replacement.size() * piece / pieces),
+                            (int) ((long) replacement.size() * (piece + 1) / pieces));
+                    byte[] raw = encode(samples);
+                    byte[] compressed = compress(raw, compression.getLevel());
+                    out.write(compressed);
+                    newBlocks.add(new SegmentBlock(position, compressed.length, raw.length, checksum(compressed),
+                            samples.get(0).getUID(), samples.get(samples.size() - 1).getUID(), resultCounts(samples)));
+                    position += compressed.length;
+                }
+            }
+
+            out.writeInt(newBlocks.size());
+            for (SegmentBlock block : newBlocks) {
+                out.writeLong(block.getOffset());
+                out.writeInt(block.getCompressedLength());
+                out.writeInt(block.getUncompressedLength());
+                out.writeInt(block.getChecksum());
+                out.writeUTF(block.getFirstUid());
+                out.writeUTF(block.getLastUid());
+                out.writeInt(block.resultCounts().length);
+                for (int count : block.resultCounts()) out.writeInt(count);
+            }
+            out.writeLong(position);
+            out.writeInt(MAGIC);
+            out.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not write segment file!"));
+        }
+
+        try {
+            try (FileChannel written = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                written.force(true);
+            }
+            try {
+                Files.move(tempFile, this.pathToTargetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, this.pathToTargetFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not replace segment file at " + pathToTargetFile.toString()));
+        }
+        this.blocks = Collections.unmodifiableList(newBlocks);
+    }
+
+    public void deleteSegmentFile() {
+        try {
+            Files.deleteIfExists(this.pathToTargetFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+            throw new UncheckedIOException(new IOException("Could not delete segment file at " + pathToTargetFile.toString()));
+        }
+    }
+
+    private static List<SegmentBlock> readIndex(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH + TRAILER_LENGTH)
+                throw new IOException("Segment file is truncated.");
+            ByteBuffer header = ByteBuffer.wrap(readFully(channel, 0, HEADER_LENGTH));
+            ByteBuffer trailer = ByteBuffer.wrap(readFully(channel, size - TRAILER_LENGTH, TRAILER_LENGTH));
+            long indexOffset = trailer.getLong();
+            if (header.getInt() != MAGIC || trailer.getInt() != MAGIC)
+                throw new IOException("Not a segment file.");
+            if (header.getInt() != VERSION)
+                throw new IOException("Unsupported segment file version.");
+            if (indexOffset < HEADER_LENGTH || indexOffset > size - TRAILER_LENGTH)
+                throw new IOException("Segment file index is corrupt.");
+
+            byte[] index = readFully(channel, indexOffset, (int) (size - TRAILER_LENGTH - indexOffset));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index));
+            int blockCount = in.readInt();
+            List<SegmentBlock> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                long offset = in.readLong();
+                int compressedLength = in.readInt();
+                int uncompressedLength = in.readInt();
+                int checksum = in.readInt();
+                String firstUid = in.readUTF();
+                String lastUid = in.readUTF();
+                int[] counts = new int[SampleResult.values().length];
+                int stored = in.readInt();
+                for (int j = 0; j < stored; j++) {
+                    int count = in.readInt();
+                    if (j < counts.length) counts[j] = count;
+                }
+                blocks.add(new SegmentBlock(offset, compressedLength, uncompressedLength, checksum, firstUid, lastUid, counts));
+            }
+            return Collections.unmodifiableList(blocks);
+        }
+    }
+
+    private static byte[] readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new IOException("Segment file is truncated.");
+        }
+        return buffer.array();
+    }
+
+    private static byte[] encode(List<Sample> samples) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(samples.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Sample sample : samples) {
+            out.writeUTF(sample.getUID());
+            out.writeDouble(sample.getSampleValue());
+            out.writeBoolean(sample.getSampleDate() != null);
+            if (sample.getSampleDate() != null) out.writeUTF(sample.getSampleDate());
+            out.writeByte(sample.getSampleResult() == null ? -1 : sample.getSampleResult().ordinal());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Sample> decode(SegmentBlock block, byte[] compressed) throws IOException {
+        if (checksum(compressed) != block.getChecksum())
+            throw new IOException("Segment block at " + block.getOffset() + " is corrupt.");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(decompress(compressed, block.getUncompressedLength())));
+        SampleResult[] results = SampleResult.values();
+        List<Sample> samples = new ArrayList<>(block.getCount(SampleResult.ALL));
+        for (int i = 0; i < block.getCount(SampleResult.ALL); i++) {
+            String uid = in.readUTF();
+            double value = in.readDouble();
+            String date = in.readBoolean() ? in.readUTF() : null;
+            byte result = in.readByte();
+            samples.add(new Sample(uid, value, date, result < 0 ? null : results[result]));
+        }
+        return samples;
+    }
+
+    private static byte[] compress(byte[] raw, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4 + 64);
+            byte[] buffer = new byte[8 * 1024];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] compressed, int uncompressedLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[uncompressedLength];
+            int length = 0;
+            while (length < raw.length && !inflater.finished() && !inflater.needsInput()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+            if (length != raw.length)
+                throw new IOException("Segment block decompressed to " + length + " instead of " + raw.length + " bytes.");
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Segment block is corrupt.", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static int[] resultCounts(List<Sample> samples) {
+        int[] counts = new int[SampleResult.values().length];
+        for (Sample sample : samples) {
+            if (sample.getSampleResult() != null) counts[sample.getSampleResult().ordinal()]++;
+        }
+        counts[SampleResult.ALL.ordinal()] = samples.size();
+        return counts;
+    }
+}
@@ -0,0 +1,301 @@
+package api.segment;
+
+import api.BasicCrud;
+import api.BatchOutcome;
+import api.SamplePage;
+import model.Sample;
+import model.SampleResult;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * This API implementation stores {@link Sample}s in a block-compressed segment file, see {@link SegmentFile}.
+ *
+ * Point lookups decompress the single block whose UID range covers the UID, filtered lists skip all blocks
+ * without Samples of the requested {@link SampleResult}, and writes only re-encode the blocks they change.
+ * Samples are kept in UID order, so with the default time-ordered UIDs new Samples go into the last block.
+ *
+ * Like the {@link api.json.JsonFileRepository} this implementation is not safe for concurrent use, and
+ * Samples without a UID are rejected, because the file is ordered by UID.
+ */
+public class SegmentFileRepository implements BasicCrud {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1_024;
+
+    private final SegmentFile segmentFile;
+    private final SegmentCompression compression;
+    private final int blockSize;
+
+    /**
+     * Opens the segment file with {@link SegmentCompression#FAST} blocks of {@link #DEFAULT_BLOCK_SIZE}
+     * Samples, or creates it if it doesn't exist yet.
+     */
+    public SegmentFileRepository(Path pathToFile) {
+        this(pathToFile, SegmentCompression.FAST, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param pathToFile the segment file, which is created if it doesn't exist yet
+     * @param compression the compression of newly written blocks
+     * @param blockSize the maximum number of Samples per block. Larger blocks compress better, smaller
+     *                  blocks make point lookups and small writes cheaper.
+     */
+    public SegmentFileRepository(Path pathToFile, SegmentCompression compression, int blockSize) {
+        if (blockSize < 1) throw new IllegalArgumentException("blockSize must be positive.");
+        this.segmentFile = new SegmentFile(pathToFile);
+        this.compression = compression;
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public List<Sample> listSamples(SampleResult resultType) {
+        List<Sample> samples = new ArrayList<>();
+        List<SegmentBlock> blocks = this.segmentFile.getBlocks();
+        for (int i = 0; i < blocks.size(); i++) {
+            if (blocks.get(i).getCount(resultType) == 0) continue;
+            for (Sample sample : this.segmentFile.readBlock(i)) {
+                if (resultType == SampleResult.ALL || sample.getSampleResult() == resultType) samples.add(sample);
+            }
+        }
+        return samples;
+    }
+
+    @Override
+    public List<Sample> listSamples() {
+        return this.listSamples(SampleResult.ALL);
+    }
+
+    /**
+     * Pages in UID order. The continuation token is the last UID of the previous page, so the next page
+     * starts decompressing at the block covering that UID.
+     */
+    @Override
+    public SamplePage listSamples(SampleResult resultType, int pageSize, String continuationToken) {
+        if (resultType == null) throw new IllegalArgumentException("resultType must not be null.");
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive.");
+        String after = continuationToken == null ? null : SamplePage.decodeToken(continuationToken, 1)[0];
+
+        List<Sample> page = new ArrayList<>(pageSize);
+        boolean hasMore = false;
+        List<SegmentBlock> blocks = this.segmentFile.getBlocks();
+        for (int i = after == null ? 0 : Math.max(0, this.blockFor(after)); i < blocks.size() && !hasMore; i++) {
+            if (blocks.get(i).getCount(resultType) == 0) continue;
+            for (Sample sample : this.segmentFile.readBlock(i)) {
+                if (after != null && sample.getUID().compareTo(after) <= 0) continue;
+                if (resultType != SampleResult.ALL && sample.getSampleResult() != resultType) continue;
+                if (page.size() == pageSize) {
+                    hasMore = true;
+                    break;
+                }
+                page.add(sample);
+            }
+        }
+
+        String nextToken = hasMore ? SamplePage.encodeToken(page.get(page.size() - 1).getUID()) : null;
+        return new SamplePage(page, nextToken);
+    }
+
+    @Override
+    public boolean insertSample(Sample sample) {
+        return this.insertSamples(Collections.singletonList(sample));
+    }
+
+    /**
+     * Inserts all Samples whose UID is not taken yet in one rewrite of the affected blocks.
+     *
+     * @return true, if all Samples were added
+     */
+    @Override
+    public boolean insertSamples(List<Sample> samples) {
+        boolean success = true;
+        Rewrite rewrite = new Rewrite();
+        for (Sample sample : samples) {
+            if (isRejected(sample) || rewrite.contains(sample.getUID())) {
+                success = false;
+                continue;
+            }
+            rewrite.put(sample);
+        }
+        rewrite.commit();
+        return success;
+    }
+
+    @Override
+    public boolean updateSample(Sample updatedSample) {
+        return this.updateSamples(Collections.singletonList(updatedSample)).get(0) == BatchOutcome.UPDATED;
+    }
+
+    @Override
+    public boolean upsertSample(Sample sample) {
+        return this.upsertSamples(Collections.singletonList(sample)).get(0) != BatchOutcome.REJECTED;
+    }
+
+    @Override
+    public boolean deleteSample(Sample sample) {
+        if (sample == null) return false;
+        return this.deleteSamplesByUid(Collections.singletonList(sample.getUID())).get(0) == BatchOutcome.DELETED;
+    }
+
+    @Override
+    public List<BatchOutcome> updateSamples(List<Sample> updatedSamples) {
+        return this.replaceSamples(updatedSamples, false);
+    }
+
+    @Override
+    public List<BatchOutcome> upsertSamples(List<Sample> samples) {
+        return this.replaceSamples(samples, true);
+    }
+
+    @Override
+    public List<BatchOutcome> deleteSamples(List<Sample> samples) {
+        List<String> uids = new ArrayList<>(samples.size());
+        for (Sample sample : samples) {
+            uids.add(sample == null ? null : sample.getUID());
+        }
+        return this.deleteSamplesByUid(uids);
+    }
+
+    /**
+     * Decompresses only the blocks covering the UIDs and rewrites only those that lost a Sample.
+     */
+    @Override
+    public List<BatchOutcome> deleteSamplesByUid(List<String> uids) {
+        List<BatchOutcome> outcomes = new ArrayList<>(uids.size());
+        Rewrite rewrite = new Rewrite();
+        for (String uid : uids) {
+            if (uid == null)
+                outcomes.add(BatchOutcome.REJECTED);
+            else
+                outcomes.add(rewrite.remove(uid) ? BatchOutcome.DELETED : BatchOutcome.NOT_FOUND);
+        }
+        rewrite.commit();
+        return outcomes;
+    }
+
+    /**
+     * Decompresses the single block whose UID range covers the UID.
+     */
+    @Override
+    public Sample retrieve(String uid) {
+        if (uid == null) return null;
+        int index = this.blockFor(uid);
+        if (index < 0 || !this.segmentFile.getBlocks().get(index).covers(uid)) return null;
+        for (Sample sample : this.segmentFile.readBlock(index)) {
+            if (uid.equals(sample.getUID())) return sample;
+        }
+        return null;
+    }
+
+    /**
+     * @return the index of all blocks of the segment file
+     */
+    public List<SegmentBlock> getBlocks() {
+        return this.segmentFile.getBlocks();
+    }
+
+    protected void close() {
+        this.segmentFile.deleteSegmentFile();
+    }
+
+    private List<BatchOutcome> replaceSamples(List<Sample> samples, boolean insertMissing) {
+        List<BatchOutcome> outcomes = new ArrayList<>(samples.size());
+        Rewrite rewrite = new Rewrite();
+        for (Sample sample : samples) {
+            if (isRejected(sample)) {
+                outcomes.add(BatchOutcome.REJECTED);
+            } else if (rewrite.contains(sample.getUID())) {
+                rewrite.put(sample);
+                outcomes.add(BatchOutcome.UPDATED);
+            } else if (insertMissing) {
+                rewrite.put(sample);
+                outcomes.add(BatchOutcome.INSERTED);
+            } else {
+                outcomes.add(BatchOutcome.NOT_FOUND);
+            }
+        }
+        rewrite.commit();
+        return outcomes;
+    }
+
+    /**
+     * @return the index of the last block starting at or before the UID, the first block for UIDs in front
+     * of all blocks, or -1 if there are no blocks at all
+     */
+    private int blockFor(String uid) {
+        List<SegmentBlock> blocks = this.segmentFile.getBlocks();
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (blocks.get(middle).getFirstUid().compareTo(uid) <= 0)
+                low = middle + 1;
+            else
+                high = middle - 1;
+        }
+        return blocks.isEmpty() ? -1 : Math.max(0, high);
+    }
+
+    private static boolean isRejected(Sample sample) {
+        return sample == null || sample.getUID() == null || sample.getSampleResult() == SampleResult.ALL;
+    }
+
+    /**
+     * Collects the changes of one write operation. Blocks are decompressed on first use, and only the
+     * blocks that actually changed are re-encoded by {@link #commit()}.
+     */
+    private final class Rewrite {
+
+        private final Map<Integer, TreeMap<String, Sample>> blocks = new TreeMap<>();
+        private final Set<Integer> modified = new HashSet<>();
+
+        boolean contains(String uid) {
+            int index = Math.max(0, blockFor(uid));
+            // a UID outside the range of its block can't be in there, unless it was put by this write
+            if (!this.blocks.containsKey(index) && (index >= segmentFile.getBlocks().size()
+                    || !segmentFile.getBlocks().get(index).covers(uid)))
+                return false;
+            return this.load(index).containsKey(uid);
+        }
+
+        void put(Sample sample) {
+            int index = Math.max(0, blockFor(sample.getUID()));
+            this.load(index).put(sample.getUID(), sample);
+            this.modified.add(index);
+        }
+
+        boolean remove(String uid) {
+            if (!this.contains(uid)) return false;
+            int index = Math.max(0, blockFor(uid));
+            this.load(index).remove(uid);
+            this.modified.add(index);
+            return true;
+        }
+
+        void commit() {
+            if (this.modified.isEmpty()) return;
+            SortedMap<Integer, List<Sample>> replaced = new TreeMap<>();
+            for (int index : this.modified) {
+                replaced.put(index, new ArrayList<>(this.blocks.get(index).values()));
+            }
+            segmentFile.rewrite(replaced, compression, blockSize);
+        }
+
+        private TreeMap<String, Sample> load(int index) {
+            return this.blocks.computeIfAbsent(index, i -> {
+                TreeMap<String, Sample> block = new TreeMap<>();
+                if (i < segmentFile.getBlocks().size()) {
+                    for (Sample sample : segmentFile.readBlock(i)) block.put(sample.getUID(), sample);
+                }
+                return block;
+            });
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package api.tiered;
+
+/**
+ * Decides which Samples the {@link TieredRepository} moves from the hot into the cold tier first.
+ */
+public enum DemotionOrder {
+
+    /**
+     * Samples with the oldest {@code sampleDate} are demoted first. Dates are compared as Strings, which
+     * orders ISO-8601 dates chronologically.
+     */
+    SAMPLE_DATE,
+
+    /**
+     * The least recently read or written Samples are demoted first. Samples read from the cold tier are
+     * promoted back into the hot tier.
+     */
+    ACCESS_RECENCY
+
+}
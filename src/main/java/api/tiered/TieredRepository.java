@@ -0,0 +1,414 @@
+package api.tiered;
+
+import api.BasicCrud;
+import api.BatchOutcome;
+import api.InMemoryRepository;
+import api.SamplePage;
+import api.SampleSnapshot;
+import model.Sample;
+import model.SampleResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link BasicCrud} implementation with two tiers: recent Samples are kept in an {@link InMemoryRepository}
+ * (the hot tier), older ones in any other repository, e.g. a {@link api.json.JsonFileRepository} (the cold tier).
+ *
+ * New Samples always go into the hot tier. Once it holds more than {@code hotCapacity} Samples, a background
+ * thread moves the oldest ones (see {@link DemotionOrder}) into the cold tier in one batch, until the hot tier
+ * is down to 90% of its capacity. This also happens periodically. Reads which miss the hot tier fall through
+ * to the cold tier.
+ *
+ * Every Sample lives in exactly one tier. To keep it that way, all writes and all accesses to the cold tier
+ * are serialized, so the cold tier doesn't need to be thread-safe. The UIDs in the cold tier are kept in memory,
+ * so duplicate checks and lookups of UIDs the cold tier doesn't hold never touch it. The cold tier must therefore
+ * only be written through this repository.
+ *
+ * Reads served by the hot tier never wait for the cold tier. With {@link DemotionOrder#ACCESS_RECENCY} they only
+ * briefly synchronize with demotion to record the access.
+ */
+public class TieredRepository implements BasicCrud, AutoCloseable {
+
+    private static final double LOW_WATERMARK = 0.9;
+    private static final String HOT_PHASE = "hot";
+    private static final String COLD_PHASE = "cold";
+
+    private final InMemoryRepository hot = new InMemoryRepository();
+    private final BasicCrud cold;
+    private final int hotCapacity;
+    private final DemotionOrder order;
+
+    private final Object lock = new Object();
+    private final Set<String> coldUids = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Guards {@link #lastAccess}, which only holds UIDs of the hot tier. Taken while holding {@link #lock}
+     * or on its own, never the other way round.
+     */
+    private final Object accessLock = new Object();
+    private final Map<String, Long> lastAccess = new HashMap<>();
+    private final AtomicLong accessClock = new AtomicLong();
+    private final ScheduledExecutorService demoter;
+    private final AtomicBoolean demotionPending = new AtomicBoolean();
+
+    /**
+     * @param cold the repository holding the cold tier. Its UIDs are listed once on construction.
+     * @param hotCapacity the number of Samples above which the hot tier is demoted
+     * @param order which Samples are demoted first
+     * @param demotionInterval how often the hot tier is checked, in addition to the checks after inserts
+     * @throws IllegalArgumentException if the capacity or the interval is not positive
+     */
+    public TieredRepository(BasicCrud cold, int hotCapacity, DemotionOrder order, Duration demotionInterval) {
+        if (hotCapacity < 1) throw new IllegalArgumentException("hotCapacity must be positive.");
+        if (demotionInterval.isZero() || demotionInterval.isNegative())
+            throw new IllegalArgumentException("demotionInterval must be positive.");
+        this.cold = cold;
+        this.hotCapacity = hotCapacity;
+        this.order = order;
+
+        String token = null;
+        do {
+            SamplePage page = cold.listSamples(SampleResult.ALL, 1_000, token);
+            for (Sample sample : page.getSamples()) this.coldUids.add(sample.getUID());
+            token = page.getContinuationToken();
+        } while (token != null);
+
+        this.demoter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tiered-repository-demoter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = demotionInterval.toMillis();
+        this.demoter.scheduleWithFixedDelay(this::demoteInBackground, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the number of Samples currently held in the hot tier
+     */
+    public int hotSize() {
+        return this.hot.snapshot().size();
+    }
+
+    /**
+     * Moves the oldest Samples from the hot into the cold tier, if the hot tier is above its capacity.
+     * Normally this is done by the background thread.
+     *
+     * @return the number of demoted Samples
+     */
+    public int demote() {
+        synchronized (this.lock) {
+            SampleSnapshot snapshot = this.hot.snapshot();
+            if (snapshot.size() <= this.hotCapacity) return 0;
+            int excess = snapshot.size() - (int) (this.hotCapacity * LOW_WATERMARK);
+
+            // keeps the 'excess' oldest Samples, the head is the youngest of them
+            PriorityQueue<Sample> oldest = new PriorityQueue<>(excess + 1, this.oldestFirst().reversed());
+            for (Sample sample : snapshot) {
+                oldest.add(sample);
+                if (oldest.size() > excess) oldest.poll();
+            }
+
+            List<Sample> demoted = new ArrayList<>(oldest);
+            this.cold.upsertSamples(demoted);
+            for (Sample sample : demoted) this.coldUids.add(sample.getUID());
+            synchronized (this.accessLock) {
+                this.hot.deleteSamples(demoted);
+                for (Sample sample : demoted) {
+                    this.lastAccess.remove(sample.getUID());
+                }
+            }
+            return demoted.size();
+        }
+    }
+
+    /**
+     * @return the demotion order. For {@link DemotionOrder#ACCESS_RECENCY} it compares a copy of the access
+     * stamps, so reads during the demotion can't change the order while the queue is built.
+     */
+    private Comparator<Sample> oldestFirst() {
+        if (this.order == DemotionOrder.SAMPLE_DATE)
+            return Comparator.comparing(Sample::getSampleDate, Comparator.nullsFirst(Comparator.naturalOrder()));
+        Map<String, Long> stamps;
+        synchronized (this.accessLock) {
+            stamps = new HashMap<>(this.lastAccess);
+        }
+        return Comparator.comparingLong(sample -> stamps.getOrDefault(sample.getUID(), 0L));
+    }
+
+    @Override
+    public void close() {
+        this.demoter.shutdownNow();
+    }
+
+    @Override
+    public List<Sample> listSamples(SampleResult resultType) {
+        List<Sample> samples;
+        synchronized (this.lock) {
+            samples = resultType == SampleResult.ALL
+                    ? this.hot.listSamples()
+                    : this.hot.listSamples(resultType);
+            for (Sample sample : this.cold.listSamples(resultType)) {
+                if (resultType == SampleResult.ALL || sample.getSampleResult() == resultType)
+                    samples.add(sample);
+            }
+        }
+        return samples;
+    }
+
+    @Override
+    public List<Sample> listSamples() {
+        return this.listSamples(SampleResult.ALL);
+    }
+
+    /**
+     * Pages through the hot tier first and through the cold tier afterwards. Samples demoted or promoted
+     * between two pages may be listed twice or not at all.
+     */
+    @Override
+    public SamplePage listSamples(SampleResult resultType, int pageSize, String continuationToken) {
+        if (resultType == null) throw new IllegalArgumentException("resultType must not be null.");
+        String phase = HOT_PHASE;
+        String tierToken = null;
+        if (continuationToken != null) {
+            String[] token = SamplePage.decodeToken(continuationToken, 2);
+            phase = token[0];
+            tierToken = token[1].isEmpty() ? null : token[1];
+        }
+
+        if (HOT_PHASE.equals(phase)) {
+            SamplePage page = this.hot.listSamples(resultType, pageSize, tierToken);
+            String next = page.hasMore()
+                    ? SamplePage.encodeToken(HOT_PHASE, page.getContinuationToken())
+                    : SamplePage.encodeToken(COLD_PHASE, "");
+            return new SamplePage(page.getSamples(), next);
+        }
+
+        SamplePage page;
+        synchronized (this.lock) {
+            page = this.cold.listSamples(resultType, pageSize, tierToken);
+        }
+        String next = page.hasMore() ? SamplePage.encodeToken(COLD_PHASE, page.getContinuationToken()) : null;
+        return new SamplePage(page.getSamples(), next);
+    }
+
+    /**
+     * Inserts the Sample into the hot tier, unless a Sample with the same UID exists in either tier.
+     */
+    @Override
+    public boolean insertSample(Sample sample) {
+        return this.insertSamples(Collections.singletonList(sample));
+    }
+
+    @Override
+    public boolean insertSamples(List<Sample> samples) {
+        boolean insertedAll = true;
+        synchronized (this.lock) {
+            List<Sample> newSamples = new ArrayList<>(samples.size());
+            for (Sample sample : samples) {
+                if (sample != null && sample.getUID() != null && this.coldUids.contains(sample.getUID())) {
+                    insertedAll = false;
+                } else {
+                    newSamples.add(sample);
+                }
+            }
+            if (!this.hot.insertSamples(newSamples)) insertedAll = false;
+            for (Sample sample : newSamples) {
+                if (sample != null) this.touch(sample.getUID());
+            }
+        }
+        this.demoteIfFull();
+        return insertedAll;
+    }
+
+    @Override
+    public boolean updateSample(Sample updatedSample) {
+        return this.updateSamples(Collections.singletonList(updatedSample)).get(0) == BatchOutcome.UPDATED;
+    }
+
+    @Override
+    public boolean upsertSample(Sample sample) {
+        return this.upsertSamples(Collections.singletonList(sample)).get(0) != BatchOutcome.REJECTED;
+    }
+
+    @Override
+    public boolean deleteSample(Sample sample) {
+        return this.deleteSamples(Collections.singletonList(sample)).get(0) == BatchOutcome.DELETED;
+    }
+
+    /**
+     * Updates the Samples in the tier they live in.
+     */
+    @Override
+    public List<BatchOutcome> updateSamples(List<Sample> updatedSamples) {
+        synchronized (this.lock) {
+            List<BatchOutcome> outcomes = new ArrayList<>(this.hot.updateSamples(updatedSamples));
+            this.touchAll(updatedSamples, outcomes);
+            this.updateCold(updatedSamples, outcomes);
+            return outcomes;
+        }
+    }
+
+    /**
+     * Updates existing Samples in the tier they live in and inserts new ones into the hot tier.
+     */
+    @Override
+    public List<BatchOutcome> upsertSamples(List<Sample> samples) {
+        List<BatchOutcome> outcomes;
+        synchronized (this.lock) {
+            outcomes = new ArrayList<>(this.hot.updateSamples(samples));
+            this.touchAll(samples, outcomes);
+            this.updateCold(samples, outcomes);
+
+            List<Integer> missing = indicesOf(outcomes, BatchOutcome.NOT_FOUND);
+            List<Sample> newSamples = new ArrayList<>(missing.size());
+            for (int index : missing) newSamples.add(samples.get(index));
+            List<BatchOutcome> inserted = this.hot.upsertSamples(newSamples);
+            this.touchAll(newSamples, inserted);
+            for (int i = 0; i < missing.size(); i++) outcomes.set(missing.get(i), inserted.get(i));
+        }
+        this.demoteIfFull();
+        return outcomes;
+    }
+
+    @Override
+    public List<BatchOutcome> deleteSamples(List<Sample> samples) {
+        List<String> uids = new ArrayList<>(samples.size());
+        for (Sample sample : samples) {
+            uids.add(sample == null ? null : sample.getUID());
+        }
+        return this.deleteSamplesByUid(uids);
+    }
+
+    @Override
+    public List<BatchOutcome> deleteSamplesByUid(List<String> uids) {
+        synchronized (this.lock) {
+            List<BatchOutcome> outcomes = new ArrayList<>(this.hot.deleteSamplesByUid(uids));
+            // only UIDs the cold tier holds are passed on to it
+            List<Integer> missing = new ArrayList<>();
+            for (int index : indicesOf(outcomes, BatchOutcome.NOT_FOUND)) {
+                if (this.coldUids.contains(uids.get(index))) missing.add(index);
+            }
+            if (!missing.isEmpty()) {
+                List<String> uidsInCold = new ArrayList<>(missing.size());
+                for (int index : missing) uidsInCold.add(uids.get(index));
+                List<BatchOutcome> coldOutcomes = this.cold.deleteSamplesByUid(uidsInCold);
+                for (int i = 0; i < missing.size(); i++) {
+                    outcomes.set(missing.get(i), coldOutcomes.get(i));
+                    if (coldOutcomes.get(i) == BatchOutcome.DELETED) this.coldUids.remove(uidsInCold.get(i));
+                }
+            }
+            synchronized (this.accessLock) {
+                for (String uid : uids) {
+                    if (uid != null) this.lastAccess.remove(uid);
+                }
+            }
+            return outcomes;
+        }
+    }
+
+    /**
+     * Serves the Sample from the hot tier, or falls through to the cold tier if it holds the UID. With
+     * {@link DemotionOrder#ACCESS_RECENCY}, Samples found in the cold tier are promoted into the hot tier.
+     */
+    @Override
+    public Sample retrieve(String uid) {
+        Sample sample = this.hot.retrieve(uid);
+        if (sample != null) {
+            this.touch(uid);
+            return sample;
+        }
+        if (uid == null || !this.coldUids.contains(uid)) return null;
+
+        synchronized (this.lock) {
+            // it may have been promoted while we were waiting for the lock
+            sample = this.hot.retrieve(uid);
+            if (sample == null) {
+                sample = this.cold.retrieve(uid);
+                if (sample == null) return null;
+                if (this.order == DemotionOrder.ACCESS_RECENCY) {
+                    this.hot.insertSample(sample);
+                    this.cold.deleteSamplesByUid(Collections.singletonList(uid));
+                    this.coldUids.remove(uid);
+                }
+            }
+            this.touch(uid);
+        }
+        this.demoteIfFull();
+        return sample;
+    }
+
+    /**
+     * Passes all items the hot tier did not find, and the cold tier holds, on to the cold tier. Must be
+     * called holding the lock.
+     */
+    private void updateCold(List<Sample> samples, List<BatchOutcome> outcomes) {
+        List<Integer> missing = new ArrayList<>();
+        for (int index : indicesOf(outcomes, BatchOutcome.NOT_FOUND)) {
+            if (this.coldUids.contains(samples.get(index).getUID())) missing.add(index);
+        }
+        if (missing.isEmpty()) return;
+        List<Sample> coldSamples = new ArrayList<>(missing.size());
+        for (int index : missing) coldSamples.add(samples.get(index));
+        List<BatchOutcome> coldOutcomes = this.cold.updateSamples(coldSamples);
+        for (int i = 0; i < missing.size(); i++) outcomes.set(missing.get(i), coldOutcomes.get(i));
+    }
+
+    /**
+     * Records the access, if the Sample is still in the hot tier. Checking that under the access lock
+     * makes sure no stamps are left behind for Samples demoted in the meantime.
+     */
+    private void touch(String uid) {
+        if (this.order != DemotionOrder.ACCESS_RECENCY) return;
+        synchronized (this.accessLock) {
+            if (this.hot.retrieve(uid) != null)
+                this.lastAccess.put(uid, this.accessClock.incrementAndGet());
+        }
+    }
+
+    /**
+     * Touches the Samples the hot tier reported as written.
+     */
+    private void touchAll(List<Sample> samples, List<BatchOutcome> outcomes) {
+        for (int i = 0; i < samples.size(); i++) {
+            if (outcomes.get(i) == BatchOutcome.INSERTED || outcomes.get(i) == BatchOutcome.UPDATED)
+                this.touch(samples.get(i).getUID());
+        }
+    }
+
+    private void demoteIfFull() {
+        if (this.hotSize() > this.hotCapacity && this.demotionPending.compareAndSet(false, true))
+            this.demoter.execute(this::demoteInBackground);
+    }
+
+    private void demoteInBackground() {
+        this.demotionPending.set(false);
+        try {
+            this.demote();
+        } catch (RuntimeException e) {
+            // keep the schedule alive, the next run will try again
+            e.printStackTrace();
+        }
+    }
+
+    private static List<Integer> indicesOf(List<BatchOutcome> outcomes, BatchOutcome outcome) {
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < outcomes.size(); i++) {
+            if (outcomes.get(i) == outcome) indices.add(i);
+        }
+        return indices;
+    }
+}
@@ -1,39 +1,45 @@
 package model;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import java.io.Serializable;
 import java.util.Objects;
-import java.util.UUID;
 
 /**
  * This class represents a Sample taken from some abstract process. A Sample is constituted 
  * by its UID, its measurement value, the date the Sample was obtained and a result which can be
  * TRUE, FALSE or UNCERTAIN.
  * 
+ * Samples are immutable. To change a Sample, derive a new one with the {@code with...} methods and
+ * write that into the repository. Since the fields never change, the hash code is computed once
+ * on construction and Samples can be shared between threads freely.
+ * 
  *  @author Soeren_T
  */
-public class Sample implements Serializable, Comparable< Sample > {
+public final class Sample implements Serializable, Comparable< Sample > {
 
 	/**
 	 * This is necessary for Jackson JSON.
 	 */
-	private static final long serialVersionUID = 1L;
+	private static final long serialVersionUID = 2L;
+
+	private static volatile UidGenerator uidGenerator = new TimeOrderedUidGenerator();
 	
 	@JsonProperty("uid")
-	private String sampleUID;
-	private double sampleValue;
-	private String sampleDate;
-	private SampleResult sampleResult;
-
-	/** 
-	 * Standard Constructor, needed by JSON.
+	private final String sampleUID;
+	private final double sampleValue;
+	private final String sampleDate;
+	private final SampleResult sampleResult;
+	/**
+	 * Not serialized, {@link #readResolve()} computes it again in the receiving JVM.
 	 */
-	public Sample() {}
+	private final transient int hash;
 	
 	/**
 	 * 
-	 * Constructor for a sample. Unique ID provided by Java {@code UUID} interface.
+	 * Constructor for a sample. Unique ID provided by the {@link UidGenerator} set with
+	 * {@link #setUidGenerator(UidGenerator)}, by default a time-ordered {@code UUID}.
 	 * 
 	 * @param sampleValue - the measured value of a sample, expected to be a double value.
 	 * @param sampleDate - the date on which a sample was obtained. Due to an illegal reflective access 
@@ -42,28 +48,39 @@ public class Sample implements Serializable, Comparable< Sample > {
 	 * @param sampleResult - the result of a sample, values provided by {@code SampleResult}.
 	 */
 	public Sample(double sampleValue, String sampleDate, SampleResult sampleResult) {
-		this.sampleUID = UUID.randomUUID().toString();
-		this.sampleValue = sampleValue;
-		this.sampleDate = sampleDate;
-		this.sampleResult = sampleResult;
+		this(uidGenerator.nextUid(), sampleValue, sampleDate, sampleResult);
 	}
 	
 	/**
 	 * This constructor constructs a sample with a given UID. In fact, this no longer guarantees the UID to be
 	 * unique. However, this constructor is needed for reconstructing Sample objects with their UID from the database.
+	 * It is also the constructor used by JSON.
 	 * @param uid - the UID you should retrieve from a database.
 	 * @param sampleValue - the value of a sample you should retrieve from a database.
 	 * @param sampleDate - the date on which a sample was obtained, which you should retrieve from a database.
 	 * @param sampleResult - the result of a Sample which you should retrieve from a database.
 	 */
-	public Sample(String uid, double sampleValue, String sampleDate, SampleResult sampleResult) {
+	@JsonCreator
+	public Sample(@JsonProperty("uid") String uid,
+				  @JsonProperty("sampleValue") double sampleValue,
+				  @JsonProperty("sampleDate") String sampleDate,
+				  @JsonProperty("sampleResult") SampleResult sampleResult) {
 		this.sampleUID = uid;
 		this.sampleValue = sampleValue;
 		this.sampleDate = sampleDate;
 		this.sampleResult = sampleResult;
+		this.hash = computeHash(uid, sampleValue, sampleDate, sampleResult);
 	}
 	
-	// Comments for Standard-Getters and Setters omitted for brevity and clarity.
+	/**
+	 * Exchanges the generator for the UIDs of all Samples constructed without a UID from now on.
+	 * @param generator - the new generator, e.g. {@link UidGenerator#RANDOM} for random UUIDs.
+	 */
+	public static void setUidGenerator(UidGenerator generator) {
+		uidGenerator = Objects.requireNonNull(generator);
+	}
+
+	// Comments for Standard-Getters omitted for brevity and clarity.
 	
 	@JsonProperty("uid")
 	public String getUID() {
@@ -82,13 +99,31 @@ public class Sample implements Serializable, Comparable< Sample > {
 		return sampleResult;
 	}
 
-	public void setSampleValue(double val) {
-		this.sampleValue = val;
+	/**
+	 * @param val - the new measured value.
+	 * @return a copy of this Sample with the given value, or this Sample if the value is the same.
+	 */
+	public Sample withSampleValue(double val) {
+		if (Double.compare(val, this.sampleValue) == 0) return this;
+		return new Sample(this.sampleUID, val, this.sampleDate, this.sampleResult);
 	}
 	
-	public void setSampleResult(SampleResult result) {
-		if(result == SampleResult.ALL) return;
-		this.sampleResult = result;
+	/**
+	 * @param result - the new result. {@link SampleResult#ALL} is only a filter criteria and is ignored.
+	 * @return a copy of this Sample with the given result, or this Sample if nothing changes.
+	 */
+	public Sample withSampleResult(SampleResult result) {
+		if (result == SampleResult.ALL || result == this.sampleResult) return this;
+		return new Sample(this.sampleUID, this.sampleValue, this.sampleDate, result);
+	}
+	
+	/**
+	 * @param date - the new date on which the sample was obtained.
+	 * @return a copy of this Sample with the given date, or this Sample if the date is the same.
+	 */
+	public Sample withSampleDate(String date) {
+		if (Objects.equals(date, this.sampleDate)) return this;
+		return new Sample(this.sampleUID, this.sampleValue, date, this.sampleResult);
 	}
 	
 	public String toString() {
@@ -127,24 +162,46 @@ public class Sample implements Serializable, Comparable< Sample > {
 	
 	/**
 	 * This modified equals-method is needed for ordering Samples mainly by Collections.sort();
+	 * Samples with different hash codes or UIDs are told apart before the remaining fields are compared.
+	 * The values are compared like {@link Double#hashCode(double)} hashes them, so NaN equals NaN.
 	 */
 	@Override
 	public boolean equals(Object obj) {
 		if(this == obj) return true;
-		if(obj == null || obj.getClass() != this.getClass()) return false;
+		if(!(obj instanceof Sample)) return false;
 		
 		Sample comparedSample = (Sample) obj;
 		
 		return (
-					this.sampleUID.equals(comparedSample.getUID())
-				&&	this.sampleDate.equals(comparedSample.getSampleDate())
-				&&	this.sampleResult.equals(comparedSample.getSampleResult())
-				&&	this.sampleValue == comparedSample.getSampleValue()
+					this.hash == comparedSample.hash
+				&&	Objects.equals(this.sampleUID, comparedSample.sampleUID)
+				&&	this.sampleResult == comparedSample.sampleResult
+				&&	Double.compare(this.sampleValue, comparedSample.sampleValue) == 0
+				&&	Objects.equals(this.sampleDate, comparedSample.sampleDate)
 			);
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(sampleUID, sampleValue, sampleDate, sampleResult);
+		return this.hash;
+	}
+
+	/**
+	 * Deserialization leaves the transient hash at 0, so the Sample is constructed again.
+	 */
+	private Object readResolve() {
+		return new Sample(this.sampleUID, this.sampleValue, this.sampleDate, this.sampleResult);
+	}
+
+	/**
+	 * Same contract as {@code Objects.hash(...)} over all fields, without the varargs array and the boxing,
+	 * except that the result is hashed by its name. Enum hash codes differ from one JVM to the next.
+	 */
+	private static int computeHash(String uid, double value, String date, SampleResult result) {
+		int h = 31 + (uid == null ? 0 : uid.hashCode());
+		h = 31 * h + Double.hashCode(value);
+		h = 31 * h + (date == null ? 0 : date.hashCode());
+		h = 31 * h + (result == null ? 0 : result.name().hashCode());
+		return h;
 	}
 }
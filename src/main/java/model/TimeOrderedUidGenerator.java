@@ -0,0 +1,62 @@
+package model;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates time-ordered version 7 UUIDs (RFC 9562): the first 48 bits hold the Unix time in
+ * milliseconds, followed by a 12 bit counter and 62 random bits.
+ *
+ * UIDs generated later sort after earlier ones, so new Samples are appended to the end of sorted
+ * indexes (like MongoDB's {@code _id} index) instead of being scattered across them. Within one thread
+ * the UIDs are strictly increasing, the counter takes care of several UIDs in the same millisecond.
+ * All state is thread-local and the random bits come from {@link ThreadLocalRandom}, so generating
+ * UIDs does not contend between threads.
+ */
+public class TimeOrderedUidGenerator implements UidGenerator {
+
+    private static final int MAX_COUNTER = 0xFFF;
+
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    @Override
+    public String nextUid() {
+        return this.nextUuid().toString();
+    }
+
+    public UUID nextUuid() {
+        State current = this.state.get();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        long now = System.currentTimeMillis();
+        if (now > current.lastMillis) {
+            current.lastMillis = now;
+            // start in the lower half so there is room for counting up within the millisecond
+            current.counter = random.nextInt(MAX_COUNTER / 2);
+        } else if (++current.counter > MAX_COUNTER) {
+            // more than 4096 UIDs in this millisecond (or the clock went backwards): borrow from the future
+            current.lastMillis++;
+            current.counter = 0;
+        }
+
+        long mostSignificant = (current.lastMillis << 16) | 0x7000L | current.counter;
+        long leastSignificant = (random.nextLong() & 0x3FFF_FFFF_FFFF_FFFFL) | 0x8000_0000_0000_0000L;
+        return new UUID(mostSignificant, leastSignificant);
+    }
+
+    /**
+     * @param uid a UID generated by this class
+     * @return the creation time in Unix milliseconds which is encoded in the UID
+     */
+    public static long timestampOf(String uid) {
+        UUID uuid = UUID.fromString(uid);
+        if (uuid.version() != 7)
+            throw new IllegalArgumentException("Not a time-ordered UID: " + uid);
+        return uuid.getMostSignificantBits() >>> 16;
+    }
+
+    private static final class State {
+        long lastMillis = Long.MIN_VALUE;
+        int counter;
+    }
+}
@@ -0,0 +1,54 @@
+package model;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Generates the UIDs of new {@link Sample}s. The generator used by {@link Sample} can be exchanged
+ * with {@link Sample#setUidGenerator(UidGenerator)}.
+ *
+ * @see TimeOrderedUidGenerator
+ */
+@FunctionalInterface
+public interface UidGenerator {
+
+    /**
+     * The behaviour of earlier versions: random (version 4) UUIDs from the shared {@code SecureRandom}.
+     */
+    UidGenerator RANDOM = () -> UUID.randomUUID().toString();
+
+    /**
+     * @return a new, unique UID in the canonical 36 character UUID form
+     */
+    String nextUid();
+
+    /**
+     * Converts a UID in canonical UUID form into its 16 byte binary form, e.g. for storage backends
+     * which support binary keys.
+     *
+     * @param uid a UID in canonical UUID form
+     * @return the 128 bits of the UID, most significant byte first
+     * @throws IllegalArgumentException if the UID is not a UUID
+     */
+    static byte[] toBinary(String uid) {
+        UUID uuid = UUID.fromString(uid);
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    /**
+     * The reverse of {@link #toBinary(String)}.
+     *
+     * @param binary the 16 bytes of a UID
+     * @return the UID in canonical UUID form
+     */
+    static String fromBinary(byte[] binary) {
+        if (binary.length != 16)
+            throw new IllegalArgumentException("A binary UID has 16 bytes, got " + binary.length);
+        ByteBuffer buffer = ByteBuffer.wrap(binary);
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+}
@@ -0,0 +1,113 @@
+package workload;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Chooses which of the existing keys an operation works on. Keys are numbered from 0 to
+ * {@code keyCount - 1}, in the order they were inserted.
+ */
+public enum KeyDistribution {
+
+    /** Every key is equally likely. */
+    UNIFORM,
+
+    /** A few keys are very popular, the popular ones are scattered over the key space. */
+    ZIPFIAN,
+
+    /** The most recently inserted keys are the most popular. */
+    LATEST;
+
+    /**
+     * Chooses a key number out of the keys inserted so far.
+     */
+    @FunctionalInterface
+    public interface KeyChooser {
+        long nextKey(long keyCount);
+    }
+
+    /**
+     * @param initialKeyCount the number of keys loaded before the run, used to prepare the zipfian constants
+     * @return a new, thread-safe chooser following this distribution
+     */
+    public KeyChooser newChooser(long initialKeyCount) {
+        switch (this) {
+            case ZIPFIAN: {
+                ZipfianGenerator zipfian = new ZipfianGenerator(initialKeyCount);
+                return keyCount -> Math.floorMod(fnvHash(zipfian.next(keyCount)), keyCount);
+            }
+            case LATEST: {
+                ZipfianGenerator zipfian = new ZipfianGenerator(initialKeyCount);
+                return keyCount -> keyCount - 1 - zipfian.next(keyCount);
+            }
+            default:
+                return keyCount -> ThreadLocalRandom.current().nextLong(keyCount);
+        }
+    }
+
+    private static long fnvHash(long value) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < 8; i++) {
+            hash ^= value & 0xFF;
+            hash *= 0x100000001B3L;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+    /**
+     * Zipfian ranks in {@code [0, n)} with the constant 0.99, after Gray et al., "Quickly Generating
+     * Billion-Record Synthetic Databases". Rank 0 is the most popular one. When the number of items grows,
+     * the zeta constant is extended incrementally instead of being recomputed.
+     *
+     * The constants are published as one immutable {@link Constants} object, so {@link #next(long)} is a
+     * single volatile read unless the number of items grew, and threads never wait for each other.
+     */
+    static final class ZipfianGenerator {
+
+        private static final double THETA = 0.99;
+        private static final double ALPHA = 1.0 / (1.0 - THETA);
+        private static final double ZETA_2 = 1.0 + 1.0 / Math.pow(2, THETA);
+
+        private final AtomicReference<Constants> constants;
+
+        ZipfianGenerator(long initialItemCount) {
+            this.constants = new AtomicReference<>(new Constants(0, 0).grow(Math.max(1, initialItemCount)));
+        }
+
+        long next(long items) {
+            Constants current = this.constants.get();
+            if (items > current.itemCount)
+                // the update is a pure function, a thread losing the race simply extends the winner's constants
+                current = this.constants.updateAndGet(latest -> items > latest.itemCount ? latest.grow(items) : latest);
+
+            double u = ThreadLocalRandom.current().nextDouble();
+            double uz = u * current.zetaN;
+            if (uz < 1.0) return 0;
+            if (uz < 1.0 + Math.pow(0.5, THETA)) return Math.min(1, items - 1);
+            long rank = (long) (items * Math.pow(current.eta * u - current.eta + 1, ALPHA));
+            return Math.min(rank, items - 1);
+        }
+
+        private static final class Constants {
+
+            private final long itemCount;
+            private final double zetaN;
+            private final double eta;
+
+            Constants(long itemCount, double zetaN) {
+                this.itemCount = itemCount;
+                this.zetaN = zetaN;
+                this.eta = itemCount == 0 ? 0 : (1 - Math.pow(2.0 / itemCount, 1 - THETA)) / (1 - ZETA_2 / zetaN);
+            }
+
+            Constants grow(long items) {
+                double zeta = this.zetaN;
+                for (long i = this.itemCount + 1; i <= items; i++) {
+                    zeta += 1.0 / Math.pow(i, THETA);
+                }
+                return new Constants(items, zeta);
+            }
+        }
+    }
+}
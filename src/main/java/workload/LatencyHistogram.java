@@ -0,0 +1,98 @@
+package workload;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A concurrent latency histogram with log-linear buckets: values are exact up to 127 nanoseconds, above
+ * that every power of two is split into 128 buckets, so any recorded value is reported with less than 1%
+ * error. Recording is a single atomic increment and never allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+    }
+
+    private LatencyHistogram(long[] counts) {
+        this.counts = new AtomicLongArray(counts);
+    }
+
+    public void record(long nanos) {
+        this.counts.incrementAndGet(indexOf(Math.max(0, nanos)));
+    }
+
+    /**
+     * Takes the recorded values out of this histogram, leaving it empty for the next interval.
+     * Values recorded concurrently end up either in the returned copy or in the next interval.
+     *
+     * @return a histogram holding everything recorded since the last call
+     */
+    public LatencyHistogram drain() {
+        long[] drained = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            if (this.counts.get(i) != 0) drained[i] = this.counts.getAndSet(i, 0);
+        }
+        return new LatencyHistogram(drained);
+    }
+
+    /**
+     * Adds all values recorded in the other histogram to this one.
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long count = other.counts.get(i);
+            if (count != 0) this.counts.addAndGet(i, count);
+        }
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += this.counts.get(i);
+        return total;
+    }
+
+    /**
+     * @param percentile between 0 and 100, e.g. 99.9
+     * @return the smallest recorded value (rounded up to its bucket) that is greater than or equal to the
+     * given percentage of all recorded values, or 0 if nothing was recorded
+     */
+    public long valueAtPercentile(double percentile) {
+        long total = this.count();
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts.get(i);
+            if (seen >= rank) return highestValueOf(i);
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    public long maxValue() {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (this.counts.get(i) != 0) return highestValueOf(i);
+        }
+        return 0;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
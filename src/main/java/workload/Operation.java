@@ -0,0 +1,23 @@
+package workload;
+
+/**
+ * The operations the {@link WorkloadDriver} mixes, each mapped onto one {@link api.BasicCrud} call.
+ */
+public enum Operation {
+
+    /** {@link api.BasicCrud#retrieve(String)} of an existing key. */
+    READ,
+
+    /** {@link api.BasicCrud#insertSample(model.Sample)} of a new key. */
+    INSERT,
+
+    /** {@link api.BasicCrud#updateSample(model.Sample)} of an existing key. */
+    UPDATE,
+
+    /** {@link api.BasicCrud#deleteSamplesByUid(java.util.List)} of an existing key. */
+    DELETE,
+
+    /** {@link api.BasicCrud#listSamples(model.SampleResult, int, String)} of the first page. */
+    LIST
+
+}
@@ -0,0 +1,114 @@
+package workload;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The settings of a {@link WorkloadDriver} run. Every setting can be given on the command line as
+ * {@code name=value}:
+ *
+ * <pre>
+ * backend=inmemory   inmemory, json, segment or mongo (a MongoDB listening on localhost:27017)
+ * records=10000      number of Samples loaded before the run
+ * threads=4          number of client threads
+ * duration=30        length of the run in seconds
+ * rate=0             target operations per second over all threads, 0 runs unthrottled
+ * distribution=zipfian  uniform, zipfian or latest
+ * read=0.5 insert=0.1 update=0.3 delete=0.05 list=0.05   relative weights of the operations
+ * pageSize=100       page size of the LIST operation
+ * interval=1         seconds between two progress reports
+ * </pre>
+ */
+public final class WorkloadConfig {
+
+    private String backend = "inmemory";
+    private long records = 10_000;
+    private int threads = 4;
+    private long durationSeconds = 30;
+    private double targetRate = 0;
+    private KeyDistribution distribution = KeyDistribution.ZIPFIAN;
+    private final Map<Operation, Double> weights = new EnumMap<>(Operation.class);
+    private int pageSize = 100;
+    private long reportIntervalSeconds = 1;
+
+    public WorkloadConfig() {
+        this.weights.put(Operation.READ, 0.5);
+        this.weights.put(Operation.INSERT, 0.1);
+        this.weights.put(Operation.UPDATE, 0.3);
+        this.weights.put(Operation.DELETE, 0.05);
+        this.weights.put(Operation.LIST, 0.05);
+    }
+
+    /**
+     * @param args settings as {@code name=value}, unknown names are rejected
+     * @return the defaults overridden by the given settings
+     */
+    public static WorkloadConfig fromArgs(String... args) {
+        WorkloadConfig config = new WorkloadConfig();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) throw new IllegalArgumentException("Expected name=value but got " + arg);
+            config.set(arg.substring(0, separator).trim(), arg.substring(separator + 1).trim());
+        }
+        return config;
+    }
+
+    public WorkloadConfig set(String name, String value) {
+        switch (name) {
+            case "backend": this.backend = value.toLowerCase(Locale.ROOT); break;
+            case "records": this.records = Long.parseLong(value); break;
+            case "threads": this.threads = Integer.parseInt(value); break;
+            case "duration": this.durationSeconds = Long.parseLong(value); break;
+            case "rate": this.targetRate = Double.parseDouble(value); break;
+            case "distribution": this.distribution = KeyDistribution.valueOf(value.toUpperCase(Locale.ROOT)); break;
+            case "pageSize": this.pageSize = Integer.parseInt(value); break;
+            case "interval": this.reportIntervalSeconds = Long.parseLong(value); break;
+            default:
+                Operation operation;
+                try {
+                    operation = Operation.valueOf(name.toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Unknown setting " + name);
+                }
+                this.weights.put(operation, Double.parseDouble(value));
+        }
+        return this;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    public KeyDistribution getDistribution() {
+        return distribution;
+    }
+
+    public double getWeight(Operation operation) {
+        return weights.getOrDefault(operation, 0.0);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public long getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+}
@@ -0,0 +1,291 @@
+package workload;
+
+import api.BasicCrud;
+import api.InMemoryRepository;
+import api.db_mongodb.MongoDbRepository;
+import api.json.JsonFileRepository;
+import api.segment.SegmentFileRepository;
+import model.Sample;
+import model.SampleResult;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A YCSB-style load generator for any {@link BasicCrud} implementation.
+ *
+ * The driver loads a number of Samples, then runs a configurable mix of {@link Operation}s from several
+ * threads for a fixed time, reporting throughput and the p50/p99/p99.9 latency of every operation once per
+ * interval and for the whole run.
+ *
+ * With a target rate, every thread runs on a fixed schedule and latencies are measured from the time an
+ * operation was scheduled to start, not from when it actually started. A stall therefore shows up in the
+ * latency of every operation that should have run during it, instead of hiding behind a single slow sample
+ * (coordinated omission). Without a target rate the threads run as fast as they can and latencies are
+ * measured from the actual start.
+ *
+ * Run it with the settings described in {@link WorkloadConfig}, e.g.
+ * {@code java workload.WorkloadDriver backend=inmemory threads=8 rate=50000 distribution=latest}.
+ */
+public class WorkloadDriver {
+
+    private static final int LOAD_BATCH_SIZE = 1_000;
+
+    private final BasicCrud target;
+    private final WorkloadConfig config;
+    private final PrintStream out;
+    private final boolean serializeAccess;
+
+    private final Map<Operation, LatencyHistogram> intervalHistograms = new EnumMap<>(Operation.class);
+    private final Map<Operation, LatencyHistogram> totalHistograms = new EnumMap<>(Operation.class);
+    private final AtomicLongArray intervalErrors = new AtomicLongArray(Operation.values().length);
+    /** Only touched by the reporting thread. */
+    private final long[] totalErrors = new long[Operation.values().length];
+    private final AtomicLong keyCount = new AtomicLong();
+    private final double[] cumulativeWeights = new double[Operation.values().length];
+
+    /**
+     * @param target the repository under test
+     * @param config the workload
+     * @param out receives the progress reports
+     * @param serializeAccess whether calls into the target have to be serialized, because it is not thread-safe
+     */
+    public WorkloadDriver(BasicCrud target, WorkloadConfig config, PrintStream out, boolean serializeAccess) {
+        this.target = target;
+        this.config = config;
+        this.out = out;
+        this.serializeAccess = serializeAccess;
+
+        double sum = 0;
+        for (Operation operation : Operation.values()) {
+            this.intervalHistograms.put(operation, new LatencyHistogram());
+            this.totalHistograms.put(operation, new LatencyHistogram());
+            sum += config.getWeight(operation);
+            this.cumulativeWeights[operation.ordinal()] = sum;
+        }
+        if (sum <= 0) throw new IllegalArgumentException("At least one operation needs a positive weight.");
+    }
+
+    public static void main(String[] args) throws IOException {
+        WorkloadConfig config = WorkloadConfig.fromArgs(args);
+        Path repositoryFile = null;
+        BasicCrud target;
+        switch (config.getBackend()) {
+            case "inmemory":
+                target = new InMemoryRepository();
+                break;
+            case "json":
+                repositoryFile = Files.createTempDirectory("workload").resolve("json-file-repository.json");
+                target = new JsonFileRepository(repositoryFile);
+                break;
+            case "segment":
+                repositoryFile = Files.createTempDirectory("workload").resolve("segment-file-repository.seg");
+                target = new SegmentFileRepository(repositoryFile);
+                break;
+            case "mongo":
+                target = new MongoDbRepository();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown backend " + config.getBackend());
+        }
+
+        try {
+            // only the file repositories are not safe for concurrent use
+            new WorkloadDriver(target, config, System.out, repositoryFile != null).run();
+        } finally {
+            if (repositoryFile != null) {
+                Files.deleteIfExists(repositoryFile);
+                Files.deleteIfExists(repositoryFile.getParent());
+            }
+        }
+    }
+
+    /**
+     * Loads the initial records, runs the workload and prints the reports.
+     *
+     * @return the latencies of the whole run by operation
+     */
+    public Map<Operation, LatencyHistogram> run() {
+        this.load();
+
+        long start = System.nanoTime();
+        long deadline = start + config.getDurationSeconds() * 1_000_000_000L;
+        KeyDistribution.KeyChooser chooser = config.getDistribution().newChooser(config.getRecords());
+        long scheduleInterval = config.getTargetRate() > 0
+                ? (long) (1_000_000_000.0 * config.getThreads() / config.getTargetRate())
+                : 0;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < config.getThreads(); i++) {
+            Thread worker = new Thread(() -> this.work(chooser, start, deadline, scheduleInterval), "workload-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+            worker.start();
+        }
+
+        long interval = config.getReportIntervalSeconds() * 1_000_000_000L;
+        long nextReport = start + interval;
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(Math.min(nextReport, deadline) - System.nanoTime());
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                this.report("[" + (now - start) / 1_000_000_000L + "s]", this.drainInterval(), this.drainErrors(),
+                        interval);
+                nextReport += interval;
+            }
+        }
+
+        for (Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        this.drainInterval();
+        this.drainErrors();
+        this.report("[total]", this.totalHistograms, this.totalErrors, System.nanoTime() - start);
+        return Collections.unmodifiableMap(this.totalHistograms);
+    }
+
+    private void load() {
+        List<Sample> batch = new ArrayList<>(LOAD_BATCH_SIZE);
+        for (long key = 0; key < config.getRecords(); key++) {
+            batch.add(sample(key));
+            if (batch.size() == LOAD_BATCH_SIZE) {
+                this.target.insertSamples(batch);
+                batch = new ArrayList<>(LOAD_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) this.target.insertSamples(batch);
+        this.keyCount.set(config.getRecords());
+    }
+
+    private void work(KeyDistribution.KeyChooser chooser, long start, long deadline, long scheduleInterval) {
+        long nextStart = start;
+        while (true) {
+            long intended;
+            if (scheduleInterval > 0) {
+                intended = nextStart;
+                nextStart += scheduleInterval;
+                long wait;
+                while ((wait = intended - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+            } else {
+                intended = System.nanoTime();
+            }
+            if (intended >= deadline) return;
+
+            Operation operation = this.nextOperation();
+            try {
+                if (this.serializeAccess) {
+                    synchronized (this.target) {
+                        this.execute(operation, chooser);
+                    }
+                } else {
+                    this.execute(operation, chooser);
+                }
+            } catch (RuntimeException e) {
+                this.intervalErrors.incrementAndGet(operation.ordinal());
+            }
+            this.intervalHistograms.get(operation).record(System.nanoTime() - intended);
+        }
+    }
+
+    private Operation nextOperation() {
+        double total = this.cumulativeWeights[this.cumulativeWeights.length - 1];
+        double choice = ThreadLocalRandom.current().nextDouble(total);
+        for (Operation operation : Operation.values()) {
+            if (choice < this.cumulativeWeights[operation.ordinal()]) return operation;
+        }
+        return Operation.READ;
+    }
+
+    private void execute(Operation operation, KeyDistribution.KeyChooser chooser) {
+        long keys = Math.max(1, this.keyCount.get());
+        switch (operation) {
+            case READ:
+                this.target.retrieve(uid(chooser.nextKey(keys)));
+                break;
+            case INSERT:
+                this.target.insertSample(sample(this.keyCount.getAndIncrement()));
+                break;
+            case UPDATE:
+                this.target.updateSample(sample(chooser.nextKey(keys)));
+                break;
+            case DELETE:
+                this.target.deleteSamplesByUid(Collections.singletonList(uid(chooser.nextKey(keys))));
+                break;
+            case LIST:
+                this.target.listSamples(SampleResult.ALL, config.getPageSize(), null);
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation " + operation);
+        }
+    }
+
+    private Map<Operation, LatencyHistogram> drainInterval() {
+        Map<Operation, LatencyHistogram> drained = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = this.intervalHistograms.get(operation).drain();
+            this.totalHistograms.get(operation).add(histogram);
+            drained.put(operation, histogram);
+        }
+        return drained;
+    }
+
+    /**
+     * @return the errors per operation since the last call, which are also added to the totals
+     */
+    private long[] drainErrors() {
+        long[] drained = new long[this.totalErrors.length];
+        for (int i = 0; i < drained.length; i++) {
+            drained[i] = this.intervalErrors.getAndSet(i, 0);
+            this.totalErrors[i] += drained[i];
+        }
+        return drained;
+    }
+
+    private void report(String label, Map<Operation, LatencyHistogram> histograms, long[] errors, long elapsedNanos) {
+        long operations = 0;
+        StringBuilder line = new StringBuilder();
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = histograms.get(operation);
+            long count = histogram.count();
+            operations += count;
+            if (count == 0) continue;
+            line.append(String.format(" | %s %d p50=%s p99=%s p999=%s max=%s", operation, count,
+                    micros(histogram.valueAtPercentile(50)), micros(histogram.valueAtPercentile(99)),
+                    micros(histogram.valueAtPercentile(99.9)), micros(histogram.maxValue())));
+            long failed = errors[operation.ordinal()];
+            if (failed > 0) line.append(" errors=").append(failed);
+        }
+        this.out.printf("%-8s %10.0f ops/s%s%n", label, operations * 1_000_000_000.0 / elapsedNanos, line);
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1fus", nanos / 1_000.0);
+    }
+
+    private static String uid(long key) {
+        return "key" + key;
+    }
+
+    private static Sample sample(long key) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        SampleResult result = random.nextBoolean() ? SampleResult.TRUE : SampleResult.FALSE;
+        return new Sample(uid(key), random.nextDouble(), "2021-01-01", result);
+    }
+}
@@ -1,15 +1,19 @@
 import api.BasicCrud;
+import api.BatchOutcome;
 import api.InMemoryRepository;
+import api.SamplePage;
+import api.SampleSnapshot;
 import model.Sample;
 import model.SampleResult;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.doReturn;
-import static org.mockito.Mockito.spy;
 
 @TestMethodOrder(OrderAnnotation.class)
 class InMemoryRepositoryTest {
@@ -20,10 +24,7 @@ class InMemoryRepositoryTest {
 	@Test
 	@Order(101)
 	void testInsertSample() {
-		Sample testSample = spy(new Sample());
-		doReturn("1").when(testSample).getUID();
-		testSample.setSampleResult(SampleResult.TRUE);
-		testSample.setSampleValue(2.1);
+		Sample testSample = new Sample("1", 2.1, "2021-02-02", SampleResult.TRUE);
 		assertTrue(this.api.insertSample(testSample)); // Add it once
 		assertFalse(this.api.insertSample(testSample)); // Don't add it twice
 	}
@@ -61,36 +62,31 @@ class InMemoryRepositoryTest {
 	@Order(200)
 	void testUpdateSample() {
 
-		Sample testSample = spy(new Sample());
-		doReturn("1").when(testSample).getUID();
-		testSample.setSampleResult(SampleResult.TRUE);
-		testSample.setSampleValue(1.2);
+		Sample testSample = new Sample("1", 1.2, "2021-02-02", SampleResult.TRUE);
 
 		this.api.insertSample(testSample);
 
-		testSample.setSampleResult(SampleResult.FALSE);
-		testSample.setSampleValue(3.2);
+		Sample updatedSample = testSample.withSampleResult(SampleResult.FALSE).withSampleValue(3.2);
 
-		assertTrue(this.api.updateSample(testSample));
+		assertTrue(this.api.updateSample(updatedSample));
 
 		Sample sampleFromPersistence = this.api.retrieve("1");
 		assertEquals(SampleResult.FALSE, sampleFromPersistence.getSampleResult());
 		assertEquals(3.2, sampleFromPersistence.getSampleValue());
+		assertEquals(SampleResult.TRUE, testSample.getSampleResult()); // the original is untouched
 	}
 	
 	@Test
 	@Order(201)
 	void whenProvidingFalseUID_thenUpdateReturnsFalse() {
-		Sample testSample = spy(new Sample());
-		doReturn("Does not exist").when(testSample).getUID();
+		Sample testSample = new Sample("Does not exist", 1.0, "2021-02-02", SampleResult.TRUE);
 		assertFalse(this.api.updateSample(testSample));
 	}
 	
 	@Test
 	@Order(202)
 	void whenProvidingNullID_thenUpdateReturnsFalse() {
-		Sample testSample = spy(new Sample());
-		doReturn(null).when(testSample).getUID();
+		Sample testSample = new Sample(null, 1.0, "2021-02-02", SampleResult.TRUE);
 		assertFalse(this.api.updateSample(testSample));
 	}
 	
@@ -101,10 +97,7 @@ class InMemoryRepositoryTest {
 	@Order(300)
 	void testDeleteSample() {
 
-		Sample testSample = spy(new Sample());
-		doReturn("4").when(testSample).getUID();
-		testSample.setSampleResult(SampleResult.FALSE);
-		testSample.setSampleValue(1.0);
+		Sample testSample = new Sample("4", 1.0, "2021-02-02", SampleResult.FALSE);
 
 		assertTrue(this.api.insertSample(testSample));
 		assertNotNull(this.api.retrieve("4"));
@@ -112,19 +105,90 @@ class InMemoryRepositoryTest {
 		assertNull(this.api.retrieve("4"));
 	}
 	
+	/*
+	 * Batch Method Tests
+	 */
+	@Test
+	@Order(350)
+	void whenApplyingBatches_thenOutcomesArePerItem() {
+		Sample first = new Sample("b1", 1.0, "2021-03-01", SampleResult.TRUE);
+		Sample second = new Sample("b2", 2.0, "2021-03-02", SampleResult.FALSE);
+		this.api.insertSample(first);
+
+		assertEquals(List.of(BatchOutcome.UPDATED, BatchOutcome.NOT_FOUND, BatchOutcome.REJECTED),
+				this.api.updateSamples(List.of(
+						new Sample("b1", 1.5, "2021-03-01", SampleResult.FALSE),
+						second,
+						new Sample("b1", 1.5, "2021-03-01", SampleResult.ALL))));
+		assertEquals(1.5, this.api.retrieve("b1").getSampleValue());
+		assertNull(this.api.retrieve("b2"));
+
+		assertEquals(List.of(BatchOutcome.UPDATED, BatchOutcome.INSERTED),
+				this.api.upsertSamples(List.of(first, second)));
+		assertEquals(2, this.api.listSamples().size());
+
+		assertEquals(List.of(BatchOutcome.DELETED, BatchOutcome.NOT_FOUND, BatchOutcome.REJECTED),
+				this.api.deleteSamplesByUid(Arrays.asList("b1", "missing", null)));
+		assertEquals(List.of(BatchOutcome.DELETED), this.api.deleteSamples(List.of(second)));
+		assertEquals(0, this.api.listSamples().size());
+	}
+
 	/*
 	 * List Method Tests
 	 */
 	@Test
 	@Order(400)
 	void testListSamples() {
-		Sample testSample = spy(new Sample());
-		doReturn("4").when(testSample).getUID();
-		testSample.setSampleResult(SampleResult.FALSE);
-		testSample.setSampleValue(1.0);
+		Sample testSample = new Sample("4", 1.0, "2021-02-02", SampleResult.FALSE);
 
 		this.api.insertSample(testSample);
 		assertEquals(1, this.api.listSamples().size());
 	}
 
+	@Test
+	@Order(401)
+	void whenWritingAfterSnapshot_thenSnapshotIsUnchanged() {
+		InMemoryRepository repository = new InMemoryRepository();
+		Sample kept = new Sample(1.0, "2021-02-02", SampleResult.TRUE);
+		Sample deleted = new Sample(2.0, "2021-02-02", SampleResult.FALSE);
+		repository.insertSamples(List.of(kept, deleted));
+
+		SampleSnapshot snapshot = repository.snapshot();
+		repository.deleteSample(deleted);
+		repository.insertSample(new Sample(3.0, "2021-02-03", SampleResult.TRUE));
+
+		assertEquals(2, snapshot.size());
+		assertNotNull(snapshot.retrieve(deleted.getUID()));
+		assertEquals(1, snapshot.listSamples(SampleResult.TRUE).size());
+		assertEquals(2, snapshot.stream().count());
+		assertEquals(2, repository.listSamples().size());
+		assertNull(repository.retrieve(deleted.getUID()));
+	}
+
+	@Test
+	@Order(402)
+	void whenPagingThroughSamples_thenEverySampleIsListedOnce() {
+		for (int i = 0; i < 25; i++) {
+			this.api.insertSample(new Sample(i, "2021-02-02", i % 5 == 0 ? SampleResult.FALSE : SampleResult.TRUE));
+		}
+
+		List<Sample> listed = new ArrayList<>();
+		List<Integer> pageSizes = new ArrayList<>();
+		String token = null;
+		do {
+			SamplePage page = this.api.listSamples(SampleResult.ALL, 10, token);
+			listed.addAll(page.getSamples());
+			pageSizes.add(page.getSamples().size());
+			token = page.getContinuationToken();
+		} while (token != null);
+
+		assertEquals(List.of(10, 10, 5), pageSizes);
+		assertEquals(25, new HashSet<>(listed).size());
+
+		SamplePage falsePage = this.api.listSamples(SampleResult.FALSE, 5, null);
+		assertEquals(5, falsePage.getSamples().size());
+		assertFalse(falsePage.hasMore());
+		assertThrows(IllegalArgumentException.class, () -> this.api.listSamples(null, 5, null));
+	}
+
 }
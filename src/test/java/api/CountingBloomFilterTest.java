@@ -0,0 +1,49 @@
+package api;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CountingBloomFilterTest {
+
+    @Test
+    void whenAddingUids_thenThereAreNoFalseNegativesAndFewFalsePositives() {
+        CountingBloomFilter filter = new CountingBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("uid-" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("uid-" + i));
+            if (filter.mightContain("absent-" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+        assertFalse(filter.mightContain(null));
+    }
+
+    @Test
+    void whenRemovingUids_thenOnlyTheRemovedOnesDisappear() {
+        CountingBloomFilter filter = new CountingBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 1_000; i++) {
+            filter.add("uid-" + i);
+        }
+        assertFalse(filter.isOverloaded());
+        filter.add("uid-1000");
+        assertTrue(filter.isOverloaded());
+
+        int stillContained = 0;
+        for (int i = 0; i < 1_000; i += 2) {
+            filter.remove("uid-" + i);
+        }
+        for (int i = 0; i < 1_000; i++) {
+            if (i % 2 == 1)
+                assertTrue(filter.mightContain("uid-" + i));
+            else if (filter.mightContain("uid-" + i))
+                stillContained++;
+        }
+        assertTrue(stillContained < 20, "still contained: " + stillContained);
+        assertFalse(filter.isOverloaded());
+    }
+
+}
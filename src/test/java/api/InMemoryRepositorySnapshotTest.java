@@ -0,0 +1,99 @@
+package api;
+
+import model.Sample;
+import model.SampleResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryRepositorySnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void whenRestoringFullAndDeltaSnapshots_thenTheRepositoryIsRebuilt() {
+        InMemoryRepository repository = new InMemoryRepository();
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 40_000; i++) {
+            samples.add(new Sample(i, i % 2 == 0 ? "2021-07-01" : null, i % 3 == 0 ? SampleResult.FALSE : SampleResult.TRUE));
+        }
+        repository.insertSamples(samples);
+
+        Path full = tempDir.resolve("1.full");
+        PersistedSnapshot fullSnapshot = repository.writeSnapshot(full);
+        assertEquals(40_000, fullSnapshot.getRecords());
+        PersistedSnapshot otherRepository = new InMemoryRepository().writeSnapshot(tempDir.resolve("other.full"));
+        assertThrows(IllegalArgumentException.class,
+                () -> repository.writeDeltaSnapshot(tempDir.resolve("other.delta"), otherRepository));
+
+        repository.updateSample(samples.get(0).withSampleResult(SampleResult.UNCERTAIN));
+        repository.deleteSample(samples.get(1));
+        Path firstDelta = tempDir.resolve("2.delta");
+        PersistedSnapshot firstDeltaSnapshot = repository.writeDeltaSnapshot(firstDelta, fullSnapshot);
+        assertEquals(2, firstDeltaSnapshot.getRecords());
+        assertEquals(39_999, firstDeltaSnapshot.getSize());
+
+        Sample inserted = new Sample(-1.0, "2021-07-02", SampleResult.UNCERTAIN);
+        repository.insertSample(inserted);
+        Path secondDelta = tempDir.resolve("3.delta");
+        assertEquals(1, repository.writeDeltaSnapshot(secondDelta, firstDeltaSnapshot).getRecords());
+        // a second chain on top of the full snapshot, which ends at the same size as the first one
+        Path branch = tempDir.resolve("branch.delta");
+        assertEquals(3, repository.writeDeltaSnapshot(branch, fullSnapshot).getRecords());
+
+        InMemoryRepository restored = InMemoryRepository.restore(full, List.of(firstDelta, secondDelta));
+        assertEquals(new HashSet<>(repository.listSamples()), new HashSet<>(restored.listSamples()));
+        assertEquals(List.of(samples.get(0).withSampleResult(SampleResult.UNCERTAIN), inserted).stream()
+                        .sorted((a, b) -> a.getUID().compareTo(b.getUID())).collect(Collectors.toList()),
+                restored.listSamples(SampleResult.UNCERTAIN, 10, null).getSamples());
+        assertNull(restored.retrieve(samples.get(1).getUID()));
+
+        assertThrows(IllegalArgumentException.class, () -> InMemoryRepository.restore(firstDelta, Collections.emptyList()));
+        assertThrows(IllegalArgumentException.class, () -> InMemoryRepository.restore(full, List.of(secondDelta)));
+        assertThrows(IllegalArgumentException.class, () -> InMemoryRepository.restore(full, List.of(firstDelta, branch)));
+        assertEquals(new HashSet<>(repository.listSamples()),
+                new HashSet<>(InMemoryRepository.restore(full, List.of(branch)).listSamples()));
+    }
+
+    @Test
+    void whenSnapshotsAreScheduled_thenOlderFilesAreReplacedByTheNextFullSnapshot() throws Exception {
+        Path directory = tempDir.resolve("snapshots");
+        InMemoryRepository repository = new InMemoryRepository();
+        assertTrue(SnapshotScheduler.restoreLatest(directory).listSamples().isEmpty());
+
+        try (SnapshotScheduler scheduler = new SnapshotScheduler(repository, directory, Duration.ofHours(1), 2)) {
+            for (int i = 0; i < 4; i++) {
+                repository.insertSample(new Sample(i, "2021-07-0" + (i + 1), SampleResult.TRUE));
+                scheduler.snapshotNow();
+            }
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(List.of("0000000000000000004.full"),
+                    files.map(file -> file.getFileName().toString()).collect(Collectors.toList()));
+        }
+
+        repository.insertSample(new Sample(5, "2021-07-05", SampleResult.FALSE));
+        try (SnapshotScheduler scheduler = new SnapshotScheduler(repository, directory, Duration.ofHours(1), 2)) {
+            assertTrue(scheduler.snapshotNow().getFileName().toString().endsWith("5.full"));
+            repository.deleteSample(repository.listSamples(SampleResult.FALSE).get(0));
+            assertTrue(scheduler.snapshotNow().getFileName().toString().endsWith("6.delta"));
+        }
+
+        assertEquals(new HashSet<>(repository.listSamples()),
+                new HashSet<>(SnapshotScheduler.restoreLatest(directory).listSamples()));
+    }
+
+}
@@ -0,0 +1,133 @@
+package api;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentHashMapTest {
+
+    @Test
+    void whenApplyingRandomOperations_thenMapBehavesLikeHashMap() {
+        Random random = new Random(42);
+        Map<String, Integer> expected = new HashMap<>();
+        PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+
+        for (int i = 0; i < 50_000; i++) {
+            String key = "key-" + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        Map<String, Integer> iterated = new HashMap<>();
+        map.forEach(iterated::put);
+        assertEquals(expected, iterated);
+        Map<String, Integer> fromIterator = new HashMap<>();
+        map.iterator().forEachRemaining(entry -> fromIterator.put(entry.getKey(), entry.getValue()));
+        assertEquals(expected, fromIterator);
+    }
+
+    @Test
+    void whenBuildingInBulk_thenTheMapMatchesOneBuiltByPuts() {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            entries.add("key-" + (i % 15_000) + "=" + i);
+        }
+        // "Aa" and "BB" share the same hashCode, the later "Aa" replaces the earlier one
+        entries.addAll(List.of("Aa=1", "BB=2", "Aa=3"));
+
+        PersistentHashMap<String, String> put = PersistentHashMap.empty();
+        for (String entry : entries) {
+            put = put.put(entry.substring(0, entry.indexOf('=')), entry);
+        }
+        PersistentHashMap<String, String> built = PersistentHashMap.build(entries, entry -> entry.substring(0, entry.indexOf('=')));
+
+        assertEquals(put.size(), built.size());
+        assertEquals("Aa=3", built.get("Aa"));
+        assertEquals("key-7=15007", built.get("key-7"));
+        Map<String, String> differences = new HashMap<>();
+        built.diff(put, differences::put, key -> differences.put(key, null));
+        assertEquals(Map.of(), differences);
+        assertTrue(PersistentHashMap.build(List.of(), String::valueOf).isEmpty());
+    }
+
+    @Test
+    void whenModifying_thenOlderVersionsAreUnchanged() {
+        PersistentHashMap<String, Integer> first = PersistentHashMap.<String, Integer>empty().put("a", 1);
+        PersistentHashMap<String, Integer> second = first.put("b", 2).put("a", 3);
+        PersistentHashMap<String, Integer> third = second.remove("a");
+
+        assertEquals(1, first.size());
+        assertEquals(1, first.get("a"));
+        assertNull(first.get("b"));
+        assertEquals(3, second.get("a"));
+        assertEquals(2, second.size());
+        assertNull(third.get("a"));
+        assertEquals(1, third.size());
+        assertSame(third, third.remove("missing"));
+    }
+
+    @Test
+    void whenHashesCollide_thenAllEntriesAreKept() {
+        // "Aa" and "BB" share the same hashCode
+        PersistentHashMap<String, Integer> map = PersistentHashMap.<String, Integer>empty()
+                .put("Aa", 1).put("BB", 2).put("C", 3);
+
+        assertEquals(3, map.size());
+        assertEquals(1, map.get("Aa"));
+        assertEquals(2, map.get("BB"));
+        map = map.remove("Aa");
+        assertNull(map.get("Aa"));
+        assertEquals(2, map.get("BB"));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void whenDiffingVersions_thenExactlyTheChangesAreReported() {
+        Random random = new Random(7);
+        PersistentHashMap<String, Integer> base = PersistentHashMap.<String, Integer>empty().put("Aa", -1).put("BB", -2);
+        for (int i = 0; i < 10_000; i++) {
+            base = base.put("key-" + i, i);
+        }
+        PersistentHashMap<String, Integer> current = base.remove("Aa");
+        Map<String, Integer> expectedChanged = new HashMap<>();
+        Set<String> expectedRemoved = new HashSet<>();
+        expectedRemoved.add("Aa");
+        for (int i = 0; i < 500; i++) {
+            String key = "key-" + random.nextInt(12_000);
+            if (random.nextBoolean()) {
+                if (base.containsKey(key)) expectedRemoved.add(key);
+                expectedChanged.remove(key);
+                current = current.remove(key);
+            } else {
+                expectedRemoved.remove(key);
+                expectedChanged.put(key, 100_000 + i);
+                current = current.put(key, 100_000 + i);
+            }
+        }
+
+        Map<String, Integer> changed = new HashMap<>();
+        Set<String> removed = new HashSet<>();
+        current.diff(base, changed::put, removed::add);
+
+        assertEquals(expectedChanged, changed);
+        assertEquals(expectedRemoved, removed);
+    }
+
+}
@@ -0,0 +1,151 @@
+package api.importer;
+
+import api.InMemoryRepository;
+import model.Sample;
+import model.SampleResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleImporterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void whenImportingCsv_thenValidLinesAreInsertedAndInvalidRejected() throws IOException {
+        Path file = tempDir.resolve("samples.csv");
+        Files.write(file, List.of(
+                "uid,sampleValue,sampleDate,sampleResult",
+                "a,1.5,2021-01-01,TRUE",
+                "b,2.5,2021-01-02,FALSE",
+                "c,3.5,2021-01-03,ALL",
+                "d,not-a-number,2021-01-04,TRUE",
+                "4.5,2021-01-05,UNCERTAIN"
+        ), StandardCharsets.UTF_8);
+
+        InMemoryRepository repository = new InMemoryRepository();
+        ImportProgress progress = new SampleImporter(repository).importFile(file, ImportFormat.CSV);
+
+        assertEquals(3, progress.getSamplesImported());
+        assertEquals(2, progress.getSamplesRejected());
+        assertEquals(Files.size(file), progress.getBytesProcessed());
+        assertEquals(3, repository.listSamples().size());
+        assertEquals(2.5, repository.retrieve("b").getSampleValue());
+        assertEquals(1, repository.listSamples(SampleResult.UNCERTAIN).size());
+    }
+
+    @Test
+    void whenChunksAreSmallerThanLines_thenEveryLineIsImportedOnce() throws IOException {
+        Path file = tempDir.resolve("samples.jsonl");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            lines.add("{\"uid\":\"uid-" + i + "\",\"sampleValue\":" + i + ".0,"
+                    + "\"sampleDate\":\"2021-02-02\",\"sampleResult\":\"TRUE\"}");
+        }
+        lines.add("{\"uid\":\"uid-all\",\"sampleValue\":1.0,\"sampleDate\":\"2021-02-02\",\"sampleResult\":\"ALL\"}");
+        lines.add("{ broken");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        InMemoryRepository repository = new InMemoryRepository();
+        List<ImportProgress> updates = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        ImportProgress progress;
+        try {
+            SampleImporter importer = new SampleImporter(repository, pool, 64, 7, 2);
+            progress = importer.importFile(file, ImportFormat.JSON_LINES, updates::add);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(500, progress.getSamplesImported());
+        assertEquals(2, progress.getSamplesRejected());
+        assertEquals(500, repository.listSamples().size());
+        Sample sample = repository.retrieve("uid-499");
+        assertEquals(499.0, sample.getSampleValue());
+        assertFalse(updates.isEmpty());
+        assertEquals(500, updates.get(updates.size() - 1).getSamplesImported());
+    }
+
+    @Test
+    void whenDataLinesStartLikeAHeader_thenOnlyTheFirstLineIsSkipped() throws IOException {
+        Path file = tempDir.resolve("header.csv");
+        Files.write(file, List.of(
+                "uid,sampleValue,sampleDate,sampleResult",
+                "uid-1,1.5,2021-01-01,TRUE",
+                "sampleValue-2,2.5,2021-01-02,FALSE",
+                "uid,sampleValue,sampleDate,sampleResult"
+        ), StandardCharsets.UTF_8);
+
+        InMemoryRepository repository = new InMemoryRepository();
+        ImportProgress progress = new SampleImporter(repository).importFile(file, ImportFormat.CSV);
+
+        assertEquals(2, progress.getSamplesImported());
+        assertEquals(1, progress.getSamplesRejected());
+        assertEquals(1.5, repository.retrieve("uid-1").getSampleValue());
+        assertEquals(2.5, repository.retrieve("sampleValue-2").getSampleValue());
+    }
+
+    @Test
+    void whenTheFirstLineIsNotExactlyAHeader_thenItIsParsedAsData() throws IOException {
+        Path data = tempDir.resolve("no-header.csv");
+        Files.write(data, List.of("uid-0,1.0,2021-01-01,TRUE", "uid-1,2.0,2021-01-02,FALSE"), StandardCharsets.UTF_8);
+        InMemoryRepository repository = new InMemoryRepository();
+        ImportProgress progress = new SampleImporter(repository).importFile(data, ImportFormat.CSV);
+        assertEquals(2, progress.getSamplesImported());
+        assertEquals(1.0, repository.retrieve("uid-0").getSampleValue());
+
+        Path broken = tempDir.resolve("broken-header.csv");
+        Files.write(broken, List.of("uid,value,date,result", "uid-1,2.0,2021-01-02,FALSE"), StandardCharsets.UTF_8);
+        progress = new SampleImporter(new InMemoryRepository()).importFile(broken, ImportFormat.CSV);
+        assertEquals(1, progress.getSamplesImported());
+        assertEquals(1, progress.getSamplesRejected());
+
+        Path withoutUid = tempDir.resolve("without-uid.csv");
+        Files.write(withoutUid, List.of(" sampleValue , sampleDate,sampleResult", "2.0,2021-01-02,FALSE"),
+                StandardCharsets.UTF_8);
+        progress = new SampleImporter(new InMemoryRepository()).importFile(withoutUid, ImportFormat.CSV);
+        assertEquals(1, progress.getSamplesImported());
+        assertEquals(0, progress.getSamplesRejected());
+    }
+
+    @Test
+    void whenChunksAreParsedOutOfOrder_thenTheyAreWrittenInFileOrder() throws IOException {
+        Path file = tempDir.resolve("duplicates.csv");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            lines.add("dup," + i + ".0,2021-02-02,TRUE");
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        List<String> written = new ArrayList<>();
+        InMemoryRepository repository = new InMemoryRepository() {
+            @Override
+            public boolean insertSamples(List<Sample> samples) {
+                for (Sample sample : samples) written.add(String.valueOf(sample.getSampleValue()));
+                return super.insertSamples(samples);
+            }
+        };
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            new SampleImporter(repository, pool, 32, 3, 8).importFile(file, ImportFormat.CSV);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(200, written.size());
+        for (int i = 0; i < 200; i++) {
+            assertEquals(String.valueOf((double) i), written.get(i));
+        }
+        assertEquals(0.0, repository.retrieve("dup").getSampleValue());
+    }
+}
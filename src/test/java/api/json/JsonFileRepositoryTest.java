@@ -1,11 +1,14 @@
 package api.json;
 
 import api.BasicCrud;
+import api.BatchOutcome;
+import api.SamplePage;
 import model.Sample;
 import model.SampleResult;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -49,12 +52,18 @@ class JsonFileRepositoryTest {
 		List<Sample> listFromFile = api.listSamples();
 		Sample sample = listFromFile.get(0);
 		assertEquals(SampleResult.TRUE, sample.getSampleResult());
-		sample.setSampleResult(SampleResult.FALSE);
-		api.updateSample(sample);
+		assertTrue(api.updateSample(sample.withSampleResult(SampleResult.FALSE).withSampleDate("tomorrow")));
 
 		listFromFile = api.listSamples();
 		assertEquals(1, listFromFile.size());
 		assertEquals(SampleResult.FALSE, listFromFile.get(0).getSampleResult());
+		assertEquals("tomorrow", listFromFile.get(0).getSampleDate());
+
+		assertFalse(api.updateSample(new Sample(sample.getUID(), 5.0, "today", SampleResult.ALL)));
+		assertFalse(api.updateSample(new Sample(1.0, "today", SampleResult.TRUE)));
+		assertEquals(listFromFile, api.listSamples());
+
+		api.updateSample(sample);
 	}
 
 	@Test
@@ -67,6 +76,119 @@ class JsonFileRepositoryTest {
 		assertEquals(0, listFromFile.size());
 	}
 
+	@Test
+	@Order(105)
+	void whenApplyingBatches_thenOutcomesArePerItem() {
+		Sample first = new Sample(1.0, "2021-03-01", SampleResult.TRUE);
+		Sample second = new Sample(2.0, "2021-03-02", SampleResult.FALSE);
+
+		assertEquals(List.of(BatchOutcome.INSERTED, BatchOutcome.INSERTED),
+				api.upsertSamples(List.of(first, second)));
+		assertEquals(List.of(BatchOutcome.UPDATED, BatchOutcome.NOT_FOUND),
+				api.updateSamples(List.of(
+						new Sample(first.getUID(), 3.0, "2021-03-01", SampleResult.UNCERTAIN),
+						new Sample(4.0, "2021-03-04", SampleResult.TRUE))));
+
+		List<Sample> listFromFile = api.listSamples();
+		assertEquals(2, listFromFile.size());
+		assertEquals(SampleResult.UNCERTAIN, listFromFile.get(0).getSampleResult());
+
+		assertEquals(List.of(BatchOutcome.DELETED, BatchOutcome.NOT_FOUND, BatchOutcome.DELETED),
+				api.deleteSamplesByUid(List.of(first.getUID(), "missing", second.getUID())));
+		assertEquals(0, api.listSamples().size());
+	}
+
+	@Test
+	@Order(106)
+	void whenPagingThroughRepository_thenEverySampleIsListedOnce() {
+		List<Sample> samples = new ArrayList<>();
+		for (int i = 0; i < 7; i++) {
+			samples.add(new Sample(i, "2021-04-0" + i, i < 2 ? SampleResult.FALSE : SampleResult.TRUE));
+		}
+		api.insertSamples(samples);
+
+		SamplePage first = api.listSamples(SampleResult.ALL, 3, null);
+		assertEquals(samples.subList(0, 3), first.getSamples());
+		SamplePage second = api.listSamples(SampleResult.ALL, 3, first.getContinuationToken());
+		assertEquals(samples.subList(3, 6), second.getSamples());
+
+		// a write moves the byte positions, the listing resumes after the last UID instead
+		api.deleteSample(samples.get(0));
+		SamplePage third = api.listSamples(SampleResult.ALL, 3, second.getContinuationToken());
+		assertEquals(samples.subList(6, 7), third.getSamples());
+		assertFalse(third.hasMore());
+
+		SamplePage filtered = api.listSamples(SampleResult.FALSE, 3, null);
+		assertEquals(samples.subList(1, 2), filtered.getSamples());
+		assertThrows(IllegalArgumentException.class, () -> api.listSamples(null, 3, null));
+
+		api.deleteSamples(samples);
+	}
+
+	@Test
+	@Order(107)
+	void whenTheLastSampleOfAPageIsReplaced_thenTheListingResumesAtItsIndex() {
+		List<Sample> samples = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			samples.add(new Sample(i, "2021-04-0" + i, SampleResult.TRUE));
+		}
+		api.insertSamples(samples);
+
+		SamplePage first = api.listSamples(SampleResult.ALL, 2, null);
+		assertEquals(samples.subList(0, 2), first.getSamples());
+		// the file keeps its size, only the write counter tells the byte positions are stale
+		Sample replacement = new Sample(9, "2021-04-09", SampleResult.TRUE);
+		api.deleteSample(samples.get(1));
+		api.insertSample(replacement);
+
+		SamplePage second = api.listSamples(SampleResult.ALL, 2, first.getContinuationToken());
+		assertEquals(samples.subList(2, 4), second.getSamples());
+		SamplePage third = api.listSamples(SampleResult.ALL, 2, second.getContinuationToken());
+		assertEquals(List.of(samples.get(4), samples.get(5)), third.getSamples());
+		assertEquals(List.of(replacement), api.listSamples(SampleResult.ALL, 2, third.getContinuationToken()).getSamples());
+
+		api.deleteSamples(api.listSamples());
+	}
+
+	@Test
+	@Order(108)
+	void whenUidFilterIsEnabled_thenLookupsAndDuplicatesAreAnswered() {
+		JsonFileRepository repository = (JsonFileRepository) api;
+		Sample existing = new Sample(1.0, "2021-05-01", SampleResult.TRUE);
+		api.insertSample(existing);
+		repository.enableUidFilter(100, 0.000001);
+		assertTrue(repository.getUidFilter().mightContain(existing.getUID()));
+
+		Sample added = new Sample(2.0, "2021-05-02", SampleResult.FALSE);
+		assertTrue(api.insertSample(added));
+		assertFalse(api.insertSample(added));
+		assertEquals(existing, api.retrieve(existing.getUID()));
+		assertEquals(added, api.retrieve(added.getUID()));
+
+		assertTrue(api.deleteSample(added));
+		assertFalse(repository.getUidFilter().mightContain(added.getUID()));
+		assertNull(api.retrieve(added.getUID()));
+		assertEquals(List.of(BatchOutcome.NOT_FOUND, BatchOutcome.DELETED),
+				api.deleteSamplesByUid(List.of(added.getUID(), existing.getUID())));
+		assertTrue(api.listSamples().isEmpty());
+	}
+
+	@Test
+	@Order(109)
+	void whenInsertingBatchWithDuplicates_thenOnlyNewUidsAreAdded() {
+		Sample existing = new Sample(1.0, "2021-05-01", SampleResult.TRUE);
+		Sample added = new Sample(2.0, "2021-05-02", SampleResult.FALSE);
+		assertTrue(api.insertSample(existing));
+
+		assertFalse(api.insertSamples(List.of(existing, added, added)));
+		assertEquals(2, api.listSamples().size());
+		assertEquals(added, api.retrieve(added.getUID()));
+		assertTrue(api.insertSamples(List.of(new Sample(3.0, "2021-05-03", SampleResult.TRUE))));
+		assertEquals(3, api.listSamples().size());
+
+		api.deleteSamples(api.listSamples());
+	}
+
 	@AfterAll
 	private static void deleteTestFile() {
 		JsonFileRepository repository = (JsonFileRepository) api;
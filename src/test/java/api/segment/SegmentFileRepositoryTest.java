@@ -0,0 +1,123 @@
+package api.segment;
+
+import api.BatchOutcome;
+import api.SamplePage;
+import model.Sample;
+import model.SampleResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentFileRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private SegmentFileRepository api;
+    private List<Sample> samples;
+
+    @BeforeEach
+    void setUp() {
+        file = tempDir.resolve("samples.seg");
+        api = new SegmentFileRepository(file, SegmentCompression.FAST, 100);
+        samples = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            SampleResult result = i < 900 ? SampleResult.TRUE : SampleResult.FALSE;
+            samples.add(new Sample(i, "2021-06-01", result));
+        }
+        assertTrue(api.insertSamples(samples));
+    }
+
+    @Test
+    void whenSamplesAreInserted_thenTheyAreSplitIntoCompressedBlocks() throws Exception {
+        assertEquals(10, api.getBlocks().size());
+        for (SegmentBlock block : api.getBlocks()) {
+            assertEquals(100, block.getCount(SampleResult.ALL));
+            assertTrue(block.getCompressedLength() < block.getUncompressedLength());
+        }
+        assertTrue(Files.size(file) < 1_000 * 40);
+
+        assertEquals(samples, api.listSamples());
+        assertEquals(samples.subList(900, 1_000), api.listSamples(SampleResult.FALSE));
+        assertEquals(samples.get(512), api.retrieve(samples.get(512).getUID()));
+        assertNull(api.retrieve("no-such-uid"));
+        assertFalse(api.insertSample(samples.get(3)));
+    }
+
+    @Test
+    void whenBatchRepeatsAUidOnAnEmptyFile_thenTheSecondOneIsADuplicate() {
+        SegmentFileRepository empty = new SegmentFileRepository(tempDir.resolve("empty.seg"));
+        Sample sample = new Sample(1.0, "2021-06-02", SampleResult.TRUE);
+        assertFalse(empty.insertSamples(List.of(sample, sample)));
+        assertEquals(List.of(sample), empty.listSamples());
+
+        SegmentFileRepository upserted = new SegmentFileRepository(tempDir.resolve("upserted.seg"));
+        Sample changed = sample.withSampleValue(2.0);
+        assertEquals(List.of(BatchOutcome.INSERTED, BatchOutcome.UPDATED), upserted.upsertSamples(List.of(sample, changed)));
+        assertEquals(List.of(changed), upserted.listSamples());
+    }
+
+    @Test
+    void whenWriting_thenOnlyTheAffectedBlockIsReEncoded() {
+        List<SegmentBlock> before = api.getBlocks();
+        Sample updated = samples.get(250).withSampleValue(-1.0);
+
+        assertEquals(List.of(BatchOutcome.UPDATED, BatchOutcome.NOT_FOUND),
+                api.updateSamples(List.of(updated, new Sample(1.0, "2021-06-02", SampleResult.TRUE))));
+        assertEquals(updated, api.retrieve(updated.getUID()));
+
+        List<SegmentBlock> after = api.getBlocks();
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            if (i == 2)
+                assertNotEquals(before.get(i).getChecksum(), after.get(i).getChecksum());
+            else
+                assertEquals(before.get(i).getChecksum(), after.get(i).getChecksum());
+        }
+
+        List<String> uids = new ArrayList<>();
+        for (Sample sample : samples.subList(0, 100)) uids.add(sample.getUID());
+        uids.add(null);
+        List<BatchOutcome> outcomes = api.deleteSamplesByUid(uids);
+        assertEquals(BatchOutcome.DELETED, outcomes.get(0));
+        assertEquals(BatchOutcome.REJECTED, outcomes.get(100));
+        assertEquals(9, api.getBlocks().size());
+        assertEquals(before.get(1).getChecksum(), api.getBlocks().get(0).getChecksum());
+    }
+
+    @Test
+    void whenReopening_thenTheIndexIsReadFromTheFile() {
+        Sample inserted = new Sample(5.0, "2021-06-03", SampleResult.UNCERTAIN);
+        assertEquals(List.of(BatchOutcome.INSERTED), api.upsertSamples(List.of(inserted)));
+
+        SegmentFileRepository reopened = new SegmentFileRepository(file, SegmentCompression.SMALLEST, 100);
+        assertEquals(api.getBlocks().size(), reopened.getBlocks().size());
+        assertEquals(List.of(inserted), reopened.listSamples(SampleResult.UNCERTAIN));
+        assertEquals(samples.size() + 1, reopened.listSamples().size());
+    }
+
+    @Test
+    void whenPaging_thenEverySampleIsListedOnceInUidOrder() {
+        List<Sample> listed = new ArrayList<>();
+        String token = null;
+        do {
+            SamplePage page = api.listSamples(SampleResult.FALSE, 30, token);
+            listed.addAll(page.getSamples());
+            token = page.getContinuationToken();
+            // writes between pages don't invalidate the token
+            api.deleteSample(samples.get(listed.size() - 1));
+        } while (token != null);
+
+        assertEquals(samples.subList(900, 1_000), listed);
+        assertThrows(IllegalArgumentException.class, () -> api.listSamples(null, 30, null));
+    }
+
+}
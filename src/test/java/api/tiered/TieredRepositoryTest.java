@@ -0,0 +1,135 @@
+package api.tiered;
+
+import api.BatchOutcome;
+import api.SamplePage;
+import api.json.JsonFileRepository;
+import model.Sample;
+import model.SampleResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    private JsonFileRepository cold;
+    private TieredRepository api;
+
+    @BeforeEach
+    void setUp() {
+        cold = new JsonFileRepository(tempDir.resolve("cold.json"));
+        api = new TieredRepository(cold, 10, DemotionOrder.SAMPLE_DATE, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        api.close();
+    }
+
+    @Test
+    void whenHotTierIsFull_thenOldestSamplesAreDemotedAndStillReadable() {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 10; i < 30; i++) {
+            samples.add(new Sample(i, "2021-01-" + i, SampleResult.TRUE));
+        }
+        assertTrue(api.insertSamples(samples));
+
+        api.demote();
+
+        assertEquals(9, api.hotSize());
+        assertEquals(11, cold.listSamples().size());
+        // the oldest Sample now lives in the cold tier, the youngest in the hot tier
+        assertNotNull(cold.retrieve(samples.get(0).getUID()));
+        assertNull(cold.retrieve(samples.get(19).getUID()));
+        assertEquals(samples.get(0), api.retrieve(samples.get(0).getUID()));
+        assertEquals(20, api.listSamples().size());
+        assertFalse(api.insertSample(samples.get(0)));
+    }
+
+    @Test
+    void whenWritingDemotedSamples_thenColdTierIsUpdated() {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 10; i < 30; i++) {
+            samples.add(new Sample(i, "2021-01-" + i, SampleResult.TRUE));
+        }
+        api.insertSamples(samples);
+        api.demote();
+        Sample demoted = samples.get(0);
+
+        assertTrue(api.updateSample(demoted.withSampleResult(SampleResult.FALSE)));
+        assertEquals(SampleResult.FALSE, cold.retrieve(demoted.getUID()).getSampleResult());
+        assertEquals(List.of(BatchOutcome.DELETED, BatchOutcome.DELETED, BatchOutcome.NOT_FOUND),
+                api.deleteSamplesByUid(List.of(demoted.getUID(), samples.get(19).getUID(), "missing")));
+        assertNull(api.retrieve(demoted.getUID()));
+        assertEquals(18, api.listSamples().size());
+    }
+
+    @Test
+    void whenPagingThroughBothTiers_thenEverySampleIsListedOnce() {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 10; i < 30; i++) {
+            samples.add(new Sample(i, "2021-01-" + i, SampleResult.TRUE));
+        }
+        api.insertSamples(samples);
+        api.demote();
+
+        Set<Sample> listed = new HashSet<>();
+        String token = null;
+        do {
+            SamplePage page = api.listSamples(SampleResult.ALL, 4, token);
+            listed.addAll(page.getSamples());
+            token = page.getContinuationToken();
+        } while (token != null);
+
+        assertEquals(new HashSet<>(samples), listed);
+        assertThrows(IllegalArgumentException.class, () -> api.listSamples(null, 4, null));
+    }
+
+    @Test
+    void whenOrderedByAccessRecency_thenColdReadsArePromoted() {
+        api.close();
+        api = new TieredRepository(cold, 10, DemotionOrder.ACCESS_RECENCY, Duration.ofHours(1));
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            samples.add(new Sample(i, "2021-01-01", SampleResult.TRUE));
+        }
+        api.insertSamples(samples);
+        api.demote(); // settles the demotion the insert started in the background, keeping Samples 11 to 19
+
+        api.retrieve(samples.get(0).getUID());
+        assertNull(cold.retrieve(samples.get(0).getUID()));
+        assertEquals(10, api.hotSize());
+
+        // Sample 11 was the least recently used one, reading it leaves 12 and 13 as the oldest
+        api.retrieve(samples.get(11).getUID());
+        api.insertSample(new Sample(20, "2021-01-01", SampleResult.TRUE));
+        api.demote();
+
+        assertEquals(9, api.hotSize());
+        assertNotNull(cold.retrieve(samples.get(12).getUID()));
+        assertNotNull(cold.retrieve(samples.get(13).getUID()));
+        assertNull(cold.retrieve(samples.get(0).getUID()));
+        assertNull(cold.retrieve(samples.get(11).getUID()));
+        assertNull(cold.retrieve(samples.get(14).getUID()));
+        assertFalse(api.insertSample(samples.get(12)));
+    }
+
+    @Test
+    void whenDemotionIntervalIsNotPositive_thenConstructionFails() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new TieredRepository(cold, 10, DemotionOrder.SAMPLE_DATE, Duration.ZERO));
+    }
+
+}
@@ -0,0 +1,84 @@
+package model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Objects;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleTest {
+
+    @Test
+    void whenDerivingWithWithers_thenOriginalIsUnchanged() {
+        Sample original = new Sample("1", 1.0, "2021-02-02", SampleResult.TRUE);
+        Sample changed = original.withSampleValue(2.0).withSampleResult(SampleResult.FALSE).withSampleDate("2021-02-03");
+
+        assertEquals(1.0, original.getSampleValue());
+        assertEquals(SampleResult.TRUE, original.getSampleResult());
+        assertEquals("1", changed.getUID());
+        assertEquals(2.0, changed.getSampleValue());
+        assertEquals(SampleResult.FALSE, changed.getSampleResult());
+        assertEquals("2021-02-03", changed.getSampleDate());
+        assertSame(original, original.withSampleResult(SampleResult.ALL));
+        assertSame(original, original.withSampleValue(1.0));
+    }
+
+    @Test
+    void whenComparingSamples_thenEqualsAndHashCodeMatchAllFields() {
+        Sample sample = new Sample("1", 1.0, "2021-02-02", SampleResult.TRUE);
+        Sample same = new Sample("1", 1.0, "2021-02-02", SampleResult.TRUE);
+
+        assertEquals(sample, same);
+        assertEquals(sample.hashCode(), same.hashCode());
+        // the result is hashed by name, so the hash code is the same in every JVM
+        assertEquals(Objects.hash("1", 1.0, "2021-02-02", "TRUE"), sample.hashCode());
+        assertNotEquals(sample, sample.withSampleValue(2.0));
+        assertNotEquals(sample, new Sample("2", 1.0, "2021-02-02", SampleResult.TRUE));
+        assertNotEquals(new Sample(null, 1.0, null, null), sample);
+    }
+
+    @Test
+    void whenSerializingToJson_thenSampleIsRestored() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Sample sample = new Sample(1.5, "2021-02-02", SampleResult.UNCERTAIN);
+
+        String json = objectMapper.writeValueAsString(sample);
+        Sample restored = objectMapper.readValue(json, Sample.class);
+
+        assertEquals(sample, restored);
+        assertFalse(json.contains("hash"));
+    }
+
+    @Test
+    void whenSerializingWithJava_thenHashCodeIsComputedAgain() throws Exception {
+        Sample sample = new Sample(2.5, "2021-02-04", SampleResult.FALSE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(sample);
+        }
+
+        Sample restored;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            restored = (Sample) in.readObject();
+        }
+
+        assertEquals(sample, restored);
+        assertEquals(sample.hashCode(), restored.hashCode());
+    }
+
+    @Test
+    void whenValueIsNaN_thenEqualSamplesAreEqual() {
+        Sample sample = new Sample("1", Double.NaN, "2021-02-05", SampleResult.TRUE);
+        Sample copy = new Sample("1", Double.NaN, "2021-02-05", SampleResult.TRUE);
+
+        assertEquals(sample, copy);
+        assertEquals(sample.hashCode(), copy.hashCode());
+        assertNotEquals(sample.withSampleValue(0.0), sample.withSampleValue(-0.0));
+    }
+}
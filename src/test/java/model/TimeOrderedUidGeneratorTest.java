@@ -0,0 +1,62 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeOrderedUidGeneratorTest {
+
+    private final TimeOrderedUidGenerator generator = new TimeOrderedUidGenerator();
+
+    @Test
+    void whenGeneratingUids_thenTheyAreVersion7AndCanonical() {
+        long before = System.currentTimeMillis();
+        String uid = generator.nextUid();
+
+        assertEquals(36, uid.length());
+        UUID uuid = UUID.fromString(uid);
+        assertEquals(7, uuid.version());
+        assertEquals(2, uuid.variant());
+        assertTrue(TimeOrderedUidGenerator.timestampOf(uid) >= before);
+    }
+
+    @Test
+    void whenGeneratingManyUidsInOneThread_thenTheyAreStrictlyIncreasing() {
+        String previous = generator.nextUid();
+        for (int i = 0; i < 100_000; i++) {
+            String next = generator.nextUid();
+            assertTrue(next.compareTo(previous) > 0, previous + " >= " + next);
+            previous = next;
+        }
+    }
+
+    @Test
+    void whenGeneratingUidsConcurrently_thenTheyAreUnique() throws InterruptedException {
+        Set<String> uids = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 25_000; i++) uids.add(generator.nextUid());
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(100_000, uids.size());
+    }
+
+    @Test
+    void whenConvertingToBinary_thenRoundTripIsLossless() {
+        String uid = generator.nextUid();
+        byte[] binary = UidGenerator.toBinary(uid);
+        assertEquals(16, binary.length);
+        assertEquals(uid, UidGenerator.fromBinary(binary));
+    }
+
+}
@@ -0,0 +1,37 @@
+package workload;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void whenRecordingValues_thenPercentilesAreWithinOnePercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1_000);
+        }
+
+        assertEquals(100_000, histogram.count());
+        assertEquals(50_000_000, histogram.valueAtPercentile(50), 500_000);
+        assertEquals(99_000_000, histogram.valueAtPercentile(99), 990_000);
+        assertEquals(99_900_000, histogram.valueAtPercentile(99.9), 999_000);
+        assertTrue(histogram.maxValue() >= 100_000_000);
+    }
+
+    @Test
+    void whenDraining_thenHistogramIsEmptyAndValuesAreMoved() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        histogram.record(Long.MAX_VALUE);
+
+        LatencyHistogram drained = histogram.drain();
+
+        assertEquals(0, histogram.count());
+        assertEquals(2, drained.count());
+        assertEquals(5, drained.valueAtPercentile(50));
+        assertEquals(Long.MAX_VALUE, drained.maxValue());
+    }
+
+}
@@ -0,0 +1,71 @@
+package workload;
+
+import api.InMemoryRepository;
+import model.Sample;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadDriverTest {
+
+    @Test
+    void whenRunningAgainstInMemoryRepository_thenOperationsAreMeasured() {
+        WorkloadConfig config = WorkloadConfig.fromArgs("records=1000", "threads=2", "duration=1",
+                "rate=2000", "distribution=latest", "interval=1");
+        PrintStream silent = new PrintStream(OutputStream.nullOutputStream());
+
+        Map<Operation, LatencyHistogram> result =
+                new WorkloadDriver(new InMemoryRepository(), config, silent, false).run();
+
+        long operations = result.values().stream().mapToLong(LatencyHistogram::count).sum();
+        assertTrue(operations > 1_000, "only " + operations + " operations");
+        assertTrue(result.get(Operation.READ).count() > 0);
+    }
+
+    @Test
+    void whenOperationsFail_thenEveryReportCountsItsOwnErrors() {
+        WorkloadConfig config = WorkloadConfig.fromArgs("records=100", "threads=2", "duration=3", "rate=1000",
+                "interval=1", "read=1", "insert=0", "update=0", "delete=0", "list=0");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        InMemoryRepository failing = new InMemoryRepository() {
+            @Override
+            public Sample retrieve(String uid) {
+                throw new IllegalStateException("unavailable");
+            }
+        };
+
+        new WorkloadDriver(failing, config, new PrintStream(output, true, StandardCharsets.UTF_8), false).run();
+
+        Pattern reads = Pattern.compile("READ (\\d+) .* errors=(\\d+)");
+        int intervals = 0;
+        for (String line : output.toString(StandardCharsets.UTF_8).split("\\R")) {
+            Matcher matcher = reads.matcher(line);
+            if (!matcher.find()) continue;
+            long count = Long.parseLong(matcher.group(1));
+            long errors = Long.parseLong(matcher.group(2));
+            if (line.startsWith("[total]")) {
+                assertEquals(count, errors);
+            } else {
+                // errors and latencies are drained one after the other, so a few operations may fall in between
+                assertTrue(Math.abs(count - errors) <= count / 10 + 10, line);
+                intervals++;
+            }
+        }
+        assertTrue(intervals >= 2, output.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void whenParsingUnknownSetting_thenConfigIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> WorkloadConfig.fromArgs("speed=fast"));
+        assertEquals(0.9, WorkloadConfig.fromArgs("read=0.9").getWeight(Operation.READ));
+    }
+
+}